@@ -133,7 +133,7 @@ public class AddProductForm extends JFrame {
 
         try (Connection conn = Database.getConnection()) {
             String sql = "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)";
-            PreparedStatement ps = conn.prepareStatement(sql);
+            PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
             ps.setString(1, name);
             ps.setString(2, category);
             ps.setDouble(3, price);
@@ -142,6 +142,10 @@ public class AddProductForm extends JFrame {
 
             int rows = ps.executeUpdate();
             if (rows > 0) {
+                ResultSet keys = ps.getGeneratedKeys();
+                if (keys.next()) {
+                    ProductSearchIndex.productAdded(keys.getInt(1), name, category);
+                }
                 JOptionPane.showMessageDialog(this, "✅ Product added successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
                 clearForm();
             } else {
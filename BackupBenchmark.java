@@ -0,0 +1,158 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * BackupBenchmark.java
+ * Created by Arvind Kumar S
+ * Measures InventoryBackup throughput against the latency a foreground writer
+ * (one product insert every few milliseconds) sees while the backup runs.
+ *
+ * Usage: java BackupBenchmark [rows] [writeIntervalMs]
+ * Works on bench_backup.db and bench_backup/ in the current directory.
+ */
+public class BackupBenchmark {
+
+    private static final long IDLE_PHASE_MS = 3000;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 300_000;
+        long writeIntervalMs = args.length > 1 ? Long.parseLong(args[1]) : 5;
+
+        File file = new File("bench_backup.db");
+        File dir = new File("bench_backup");
+        for (String suffix : new String[] {"", "-wal", "-shm"}) {
+            Files.deleteIfExists(new File(file.getPath() + suffix).toPath());
+        }
+        dir.mkdirs();
+
+        // Must be set before Database is first touched
+        System.setProperty("inventory.db", file.getPath());
+        try (Connection conn = Database.getConnection()) {
+            populate(conn, rows);
+        }
+        System.out.printf("Loaded %,d products, %.1f MB%n", rows, file.length() / 1e6);
+
+        System.out.printf("%-28s %10s %10s %10s %10s %10s  %s%n",
+                "phase", "MB/s", "writes", "p50 ms", "p99 ms", "max ms", "backup");
+        Writer writer = new Writer(writeIntervalMs);
+        Thread thread = new Thread(writer, "bench-writer");
+        thread.start();
+        try {
+            writer.reset();
+            Thread.sleep(IDLE_PHASE_MS);
+            report("no backup", null, writer, 0);
+
+            InventoryBackup unthrottled = new InventoryBackup(-1, 0);
+            File full = new File(dir, "full-unthrottled.db");
+            writer.reset();
+            InventoryBackup.BackupReport r = unthrottled.full(full);
+            report("full, single step", r, writer, file.length());
+
+            InventoryBackup throttled = new InventoryBackup();
+            File fullThrottled = new File(dir, "full-throttled.db");
+            writer.reset();
+            r = throttled.full(fullThrottled);
+            report("full, throttled", r, writer, file.length());
+
+            Thread.sleep(IDLE_PHASE_MS);
+            File delta = new File(dir, "delta-1.bin");
+            writer.reset();
+            r = throttled.delta(InventoryBackup.manifestFile(fullThrottled), delta);
+            report("delta, throttled", r, writer, file.length());
+        } finally {
+            writer.stop();
+            thread.join();
+        }
+    }
+
+    private static void report(String phase, InventoryBackup.BackupReport backup, Writer writer, long dbBytes) {
+        List<Long> latencies = writer.snapshot();
+        Collections.sort(latencies);
+        double mbPerSec = backup == null || backup.millis == 0 ? 0 : dbBytes / 1e3 / backup.millis;
+        System.out.printf("%-28s %10.1f %10d %10.2f %10.2f %10.2f  %s%n", phase, mbPerSec, latencies.size(),
+                percentile(latencies, 0.50), percentile(latencies, 0.99), percentile(latencies, 1.0),
+                backup == null ? "" : backup);
+    }
+
+    private static double percentile(List<Long> sorted, double p) {
+        if (sorted.isEmpty()) return 0;
+        int index = (int) Math.ceil(p * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index)) / 1e6;
+    }
+
+    private static void populate(Connection conn, int rows) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+        String sql = "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "Product " + i);
+                ps.setString(2, "Category " + random.nextInt(20));
+                ps.setDouble(3, random.nextInt(100_000) / 100.0);
+                ps.setInt(4, random.nextInt(500));
+                ps.setString(5, "Benchmark product number " + i);
+                ps.addBatch();
+                if (i % 10_000 == 9_999) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+    }
+
+    /** Inserts one product per interval on its own connection, like the Add Product form. */
+    private static class Writer implements Runnable {
+        private final long intervalMs;
+        private final List<Long> latencies = new ArrayList<>();
+        private volatile boolean running = true;
+
+        Writer(long intervalMs) {
+            this.intervalMs = intervalMs;
+        }
+
+        @Override
+        public void run() {
+            int i = 0;
+            while (running) {
+                long start = System.nanoTime();
+                try (Connection conn = Database.getConnection()) {
+                    PreparedStatement ps = conn.prepareStatement(
+                            "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)");
+                    ps.setString(1, "Live " + i++);
+                    ps.setString(2, "Live");
+                    ps.setDouble(3, 10);
+                    ps.setInt(4, 1);
+                    ps.setString(5, "");
+                    ps.executeUpdate();
+                } catch (SQLException ex) {
+                    System.err.println("Write failed: " + ex.getMessage());
+                }
+                synchronized (this) {
+                    latencies.add(System.nanoTime() - start);
+                }
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        synchronized void reset() {
+            latencies.clear();
+        }
+
+        synchronized List<Long> snapshot() {
+            return new ArrayList<>(latencies);
+        }
+
+        void stop() {
+            running = false;
+        }
+    }
+}
@@ -7,7 +7,11 @@ import java.sql.*;
  */
 public class Database {
 
-    private static final String DB_URL = "jdbc:sqlite:inventory.db";
+    // -Dinventory.db=<path> points the app (or a benchmark) at a different file
+    private static final String DB_URL = "jdbc:sqlite:" + System.getProperty("inventory.db", "inventory.db");
+
+    // Current time as epoch millis, evaluated inside SQLite (triggers, migrations)
+    static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
 
     // Static block to auto-initialize the database and tables on first use
     static {
@@ -21,6 +25,12 @@ public class Database {
         try (Connection conn = DriverManager.getConnection(DB_URL);
              Statement stmt = conn.createStatement()) {
 
+            // Incremental auto-vacuum lets the purge job hand freed pages back to the OS
+            enableIncrementalVacuum(stmt);
+
+            // WAL lets InventoryBackup read a consistent snapshot while the forms keep writing
+            stmt.execute("PRAGMA journal_mode = WAL");
+
             // Create products table
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS products (
@@ -29,10 +39,136 @@ public class Database {
                         category TEXT,
                         price REAL NOT NULL,
                         quantity INTEGER NOT NULL,
-                        description TEXT
+                        description TEXT,
+                        deleted_at INTEGER,
+                        updated_at INTEGER
+                    )
+                    """);
+
+            // Older databases predate soft delete
+            if (!hasColumn(conn, "products", "deleted_at")) {
+                stmt.execute("ALTER TABLE products ADD COLUMN deleted_at INTEGER");
+            }
+
+            // Older databases predate archival; treat existing rows as touched today
+            if (!hasColumn(conn, "products", "updated_at")) {
+                stmt.execute("ALTER TABLE products ADD COLUMN updated_at INTEGER");
+                stmt.execute("UPDATE products SET updated_at = " + NOW_MILLIS);
+            }
+
+            // updated_at drives archival age, so keep it current on every write path
+            stmt.execute("""
+                    CREATE TRIGGER IF NOT EXISTS trg_products_inserted
+                    AFTER INSERT ON products WHEN NEW.updated_at IS NULL
+                    BEGIN
+                        UPDATE products SET updated_at = %s WHERE id = NEW.id;
+                    END
+                    """.formatted(NOW_MILLIS));
+            stmt.execute("""
+                    CREATE TRIGGER IF NOT EXISTS trg_products_updated
+                    AFTER UPDATE OF name, category, price, quantity, description ON products
+                    BEGIN
+                        UPDATE products SET updated_at = %s WHERE id = NEW.id;
+                    END
+                    """.formatted(NOW_MILLIS));
+
+            // Live rows only: keeps listing/search off the tombstones
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_live_name
+                    ON products(name) WHERE deleted_at IS NULL
+                    """);
+
+            // Tombstones only: lets the purge job find expired rows without a scan
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_tombstones
+                    ON products(deleted_at) WHERE deleted_at IS NOT NULL
+                    """);
+
+            // Live rows by age: lets ProductArchive find archival candidates without a scan
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_live_updated
+                    ON products(updated_at) WHERE deleted_at IS NULL
+                    """);
+
+            // Range queries: price within a category, price across categories, low stock
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_category_price
+                    ON products(category, price) WHERE deleted_at IS NULL
+                    """);
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_price
+                    ON products(price) WHERE deleted_at IS NULL
+                    """);
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_quantity
+                    ON products(quantity) WHERE deleted_at IS NULL
+                    """);
+
+            // Top-K by stock value reads this expression index backwards
+            stmt.execute("""
+                    CREATE INDEX IF NOT EXISTS idx_products_stock_value
+                    ON products(price * quantity) WHERE deleted_at IS NULL
+                    """);
+
+            // Low-stock thresholds: one row per product override or per category
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_thresholds (
+                        id INTEGER PRIMARY KEY AUTOINCREMENT,
+                        product_id INTEGER UNIQUE,
+                        category TEXT UNIQUE,
+                        threshold INTEGER NOT NULL CHECK (threshold >= 0),
+                        CHECK ((product_id IS NULL) <> (category IS NULL))
                     )
                     """);
 
+            // Quantity change log consumed by LowStockAlertEngine, so it never polls the catalog
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_changes (
+                        seq INTEGER PRIMARY KEY AUTOINCREMENT,
+                        product_id INTEGER NOT NULL,
+                        category TEXT,
+                        quantity INTEGER,
+                        removed INTEGER NOT NULL DEFAULT 0
+                    )
+                    """);
+            // How far each running LowStockAlertEngine has read; the log is trimmed to the slowest
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_consumers (
+                        consumer TEXT PRIMARY KEY,
+                        last_seq INTEGER NOT NULL,
+                        seen_at INTEGER NOT NULL
+                    )
+                    """);
+            // Changes some engine has already alerted on, so engines sharing the file alert once
+            stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS stock_alerts (
+                        seq INTEGER PRIMARY KEY
+                    )
+                    """);
+            stmt.execute("""
+                    CREATE TRIGGER IF NOT EXISTS trg_stock_inserted
+                    AFTER INSERT ON products
+                    BEGIN
+                        INSERT INTO stock_changes (product_id, category, quantity)
+                        VALUES (NEW.id, NEW.category, NEW.quantity);
+                    END
+                    """);
+            stmt.execute("""
+                    CREATE TRIGGER IF NOT EXISTS trg_stock_updated
+                    AFTER UPDATE OF quantity, category, deleted_at ON products
+                    BEGIN
+                        INSERT INTO stock_changes (product_id, category, quantity, removed)
+                        VALUES (NEW.id, NEW.category, NEW.quantity, NEW.deleted_at IS NOT NULL);
+                    END
+                    """);
+            stmt.execute("""
+                    CREATE TRIGGER IF NOT EXISTS trg_stock_deleted
+                    AFTER DELETE ON products
+                    BEGIN
+                        INSERT INTO stock_changes (product_id, removed) VALUES (OLD.id, 1);
+                    END
+                    """);
+
             // Create buyers table
             stmt.execute("""
                     CREATE TABLE IF NOT EXISTS buyers (
@@ -40,4 +176,51 @@ public class Database {
                         name TEXT NOT NULL,
                         email TEXT,
                         phone TEXT,
-                        address
+                        address TEXT
+                    )
+                    """);
+
+        } catch (SQLException ex) {
+            System.err.println("Database initialization failed: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Opens a new connection to inventory.db. Callers are expected to close it.
+     */
+    public static Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(DB_URL);
+    }
+
+    /**
+     * Switches the file to auto_vacuum=INCREMENTAL. A brand-new file picks the mode up
+     * directly; an existing file needs a one-off VACUUM to rewrite its layout.
+     */
+    private static void enableIncrementalVacuum(Statement stmt) throws SQLException {
+        int mode;
+        try (ResultSet rs = stmt.executeQuery("PRAGMA auto_vacuum")) {
+            mode = rs.next() ? rs.getInt(1) : 0;
+        }
+        if (mode == 2) return;
+
+        boolean hasTables;
+        try (ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master WHERE type = 'table'")) {
+            hasTables = rs.next() && rs.getInt(1) > 0;
+        }
+        stmt.execute("PRAGMA auto_vacuum = INCREMENTAL");
+        if (hasTables) {
+            stmt.execute("VACUUM");
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) return true;
+            }
+        }
+        return false;
+    }
+}
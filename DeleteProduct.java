@@ -3,6 +3,9 @@ import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.*;
 import java.sql.*;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * DeleteProductForm.java
@@ -11,6 +14,8 @@ import java.sql.*;
  */
 
 public class DeleteProductForm extends JFrame {
+    private static final int SEARCH_LIMIT = 50;
+
     private JTable productTable;
     private DefaultTableModel tableModel;
     private JButton refreshButton, clearSearchButton, closeButton;
@@ -99,7 +104,7 @@ public class DeleteProductForm extends JFrame {
         tableModel.setRowCount(0);
         try (Connection conn = Database.getConnection();
              Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery("SELECT * FROM products ORDER BY name")) {
+             ResultSet rs = stmt.executeQuery("SELECT * FROM products WHERE deleted_at IS NULL ORDER BY name")) {
 
             while (rs.next()) {
                 Object[] row = {
@@ -120,7 +125,7 @@ public class DeleteProductForm extends JFrame {
     }
 
     private void filterProducts() {
-        String searchText = searchField.getText().trim().toLowerCase();
+        String searchText = searchField.getText().trim();
         if (searchText.isEmpty()) {
             loadProducts();
             return;
@@ -128,17 +133,26 @@ public class DeleteProductForm extends JFrame {
 
         tableModel.setRowCount(0);
         try (Connection conn = Database.getConnection()) {
-            String sql = "SELECT * FROM products WHERE LOWER(name) LIKE ? OR LOWER(category) LIKE ? ORDER BY name";
-            PreparedStatement ps = conn.prepareStatement(sql);
-            ps.setString(1, "%" + searchText + "%");
-            ps.setString(2, "%" + searchText + "%");
-
-            ResultSet rs = ps.executeQuery();
-            if (!rs.isBeforeFirst()) {
+            // Typo-tolerant ranked lookup in memory, then fetch only the matching rows
+            List<ProductSearchIndex.Hit> hits = ProductSearchIndex.shared().search(searchText, SEARCH_LIMIT);
+            if (hits.isEmpty()) {
                 JOptionPane.showMessageDialog(this, "No matching products found.",
                         "Search Result", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+
+            StringBuilder sql = new StringBuilder("SELECT * FROM products WHERE deleted_at IS NULL AND id IN (");
+            for (int i = 0; i < hits.size(); i++) {
+                sql.append(i == 0 ? "?" : ", ?");
+            }
+            sql.append(")");
+            PreparedStatement ps = conn.prepareStatement(sql.toString());
+            for (int i = 0; i < hits.size(); i++) {
+                ps.setInt(i + 1, hits.get(i).productId);
             }
 
+            Map<Integer, Object[]> rows = new HashMap<>();
+            ResultSet rs = ps.executeQuery();
             while (rs.next()) {
                 Object[] row = {
                     rs.getInt("id"),
@@ -149,7 +163,13 @@ public class DeleteProductForm extends JFrame {
                     rs.getString("description"),
                     "Delete"
                 };
-                tableModel.addRow(row);
+                rows.put(rs.getInt("id"), row);
+            }
+
+            // Keep the index's ranking, best match first
+            for (ProductSearchIndex.Hit hit : hits) {
+                Object[] row = rows.get(hit.productId);
+                if (row != null) tableModel.addRow(row);
             }
 
         } catch (SQLException ex) {
@@ -159,20 +179,28 @@ public class DeleteProductForm extends JFrame {
 
     public void deleteProduct(int productId) {
         int confirm = JOptionPane.showConfirmDialog(this,
-            "Are you sure you want to delete this product?\nThis cannot be undone.",
+            "Are you sure you want to delete this product?",
             "Confirm Deletion", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
 
         if (confirm == JOptionPane.YES_OPTION) {
+            // Soft delete: stamp a tombstone, ProductPurgeJob removes the row later
             try (Connection conn = Database.getConnection()) {
-                String sql = "DELETE FROM products WHERE id = ?";
+                String sql = "UPDATE products SET deleted_at = ? WHERE id = ? AND deleted_at IS NULL";
                 PreparedStatement ps = conn.prepareStatement(sql);
-                ps.setInt(1, productId);
+                ps.setLong(1, System.currentTimeMillis());
+                ps.setInt(2, productId);
 
                 int result = ps.executeUpdate();
                 if (result > 0) {
-                    JOptionPane.showMessageDialog(this, "✅ Product deleted successfully.",
-                            "Success", JOptionPane.INFORMATION_MESSAGE);
+                    ProductSearchIndex.productRemoved(productId);
                     loadProducts();
+                    Object[] options = {"OK", "↩️ Undo"};
+                    int choice = JOptionPane.showOptionDialog(this, "✅ Product deleted successfully.",
+                            "Success", JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE,
+                            null, options, options[0]);
+                    if (choice == 1) {
+                        restoreProduct(productId);
+                    }
                 } else {
                     JOptionPane.showMessageDialog(this, "Product not found or already deleted.",
                             "Error", JOptionPane.ERROR_MESSAGE);
@@ -184,6 +212,35 @@ public class DeleteProductForm extends JFrame {
         }
     }
 
+    /**
+     * Clears the tombstone again. Only possible until the purge job has removed the row.
+     */
+    public void restoreProduct(int productId) {
+        try (Connection conn = Database.getConnection()) {
+            String sql = "UPDATE products SET deleted_at = NULL WHERE id = ? AND deleted_at IS NOT NULL";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setInt(1, productId);
+
+            if (ps.executeUpdate() > 0) {
+                PreparedStatement row = conn.prepareStatement("SELECT name, category FROM products WHERE id = ?");
+                row.setInt(1, productId);
+                ResultSet rs = row.executeQuery();
+                if (rs.next()) {
+                    ProductSearchIndex.productAdded(productId, rs.getString("name"), rs.getString("category"));
+                }
+                JOptionPane.showMessageDialog(this, "✅ Product restored.",
+                        "Undo", JOptionPane.INFORMATION_MESSAGE);
+                loadProducts();
+            } else {
+                JOptionPane.showMessageDialog(this, "Product can no longer be restored.",
+                        "Undo", JOptionPane.ERROR_MESSAGE);
+            }
+
+        } catch (SQLException ex) {
+            showError("Failed to restore product.", ex);
+        }
+    }
+
     private void showError(String message, Exception ex) {
         JOptionPane.showMessageDialog(this, message,
                 "Database Error", JOptionPane.ERROR_MESSAGE);
@@ -197,7 +254,27 @@ public class DeleteProductForm extends JFrame {
         } catch (Exception ignored) {}
     }
 
+    /** Builds the search index off the EDT so the first keystroke does not pay for it. */
+    private static void warmSearchIndex() {
+        Thread warmer = new Thread(() -> {
+            try {
+                ProductSearchIndex index = ProductSearchIndex.shared();
+                System.out.printf("Search index ready: %d products, %.0f bytes per product%n",
+                        index.size(), index.bytesPerProduct());
+            } catch (SQLException ex) {
+                ex.printStackTrace();
+            }
+        }, "search-index-warmup");
+        warmer.setDaemon(true);
+        warmer.start();
+    }
+
     public static void main(String[] args) {
+        ProductPurgeJob.startDefault();
+        ProductArchive.startDefault();
+        InventoryBackup.startDefault();
+        LowStockAlertEngine.startDefault();
+        warmSearchIndex();
         SwingUtilities.invokeLater(() -> new DeleteProductForm().setVisible(true));
     }
 }
@@ -0,0 +1,515 @@
+import org.sqlite.SQLiteConnection;
+import org.sqlite.core.DB;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * InventoryBackup.java
+ * Created by Arvind Kumar S
+ * Online, page-level backup and restore of inventory.db using the SQLite backup API.
+ *
+ * A full backup is a plain copy of the database file. A delta backup stores
+ * only the pages that changed since a parent backup (a full one for a
+ * differential, the previous delta for an incremental chain). Every backup
+ * writes a manifest with a CRC32 per page and a SHA-256 of the whole file,
+ * and restore verifies both at every step of the chain.
+ *
+ * The copy runs in steps of {@code pagesPerStep} pages with a pause in between,
+ * all inside one read transaction. In WAL mode that pins a single snapshot, so
+ * commits from the forms neither restart the copy nor wait for it; the backup
+ * never takes the write lock.
+ *
+ * {@link #startDefault()} keeps backups/ current from every running form: a
+ * full backup a day and a differential delta against it every 15 minutes,
+ * checked for once a minute. Processes sharing the directory take turns through
+ * a lock file. Restore the newest full with the newest delta written after it.
+ *
+ * RPO: at most the delta interval plus the check period plus the duration of
+ * one backup, so roughly 16 minutes of changes while any form is running. With
+ * none running nothing is scheduled; run {@code InventoryBackup scheduled
+ * backups} from cron every few minutes to keep the same RPO.
+ */
+public class InventoryBackup {
+
+    private static final int MANIFEST_MAGIC = 0x494E564D; // "INVM"
+    private static final int DELTA_MAGIC = 0x494E5644;    // "INVD"
+    private static final int SQLITE_DONE = 101;
+
+    private static final long DEFAULT_FULL_INTERVAL_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long DEFAULT_DELTA_INTERVAL_MS = TimeUnit.MINUTES.toMillis(15);
+    private static final String FULL_PREFIX = "full_";
+    private static final String DELTA_PREFIX = "delta_";
+    private static final String FILE_SUFFIX = ".db";
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final int pagesPerStep;
+    private final long pauseMs;
+
+    /**
+     * @param pagesPerStep pages copied per step; -1 copies everything in one step
+     * @param pauseMs sleep after each step
+     */
+    public InventoryBackup(int pagesPerStep, long pauseMs) {
+        if (pagesPerStep == 0 || pagesPerStep < -1)
+            throw new IllegalArgumentException("Pages per step must be positive or -1");
+        if (pauseMs < 0)
+            throw new IllegalArgumentException("Pause cannot be negative");
+        this.pagesPerStep = pagesPerStep;
+        this.pauseMs = pauseMs;
+    }
+
+    /** Default: 256 pages (1 MB at 4 KB pages) per step, 10 ms apart. */
+    public InventoryBackup() {
+        this(256, 10);
+    }
+
+    /**
+     * Copies the live database to {@code dest} and writes {@code dest.manifest}.
+     */
+    public BackupReport full(File dest) throws SQLException, IOException {
+        BackupReport report = snapshot(dest);
+        Manifest manifest = Manifest.of(dest);
+        manifest.write(manifestFile(dest));
+        report.bytesWritten = dest.length();
+        report.pagesWritten = manifest.pageCount;
+        return report;
+    }
+
+    /**
+     * Stores the pages that differ from the backup described by {@code parentManifest}
+     * into {@code dest}, and writes {@code dest.manifest} so a further delta can chain on.
+     */
+    public BackupReport delta(File parentManifest, File dest) throws SQLException, IOException {
+        Manifest parent = Manifest.read(parentManifest);
+        File temp = File.createTempFile("snapshot", ".db", dest.getAbsoluteFile().getParentFile());
+        try {
+            BackupReport report = snapshot(temp);
+            Manifest current = Manifest.of(temp);
+            if (current.pageSize != parent.pageSize)
+                throw new IOException("Page size changed since parent backup; take a new full backup");
+
+            List<Integer> changed = new ArrayList<>();
+            for (int page = 0; page < current.pageCount; page++) {
+                if (page >= parent.pageCount || current.crcs[page] != parent.crcs[page]) {
+                    changed.add(page);
+                }
+            }
+
+            try (RandomAccessFile in = new RandomAccessFile(temp, "r");
+                 DataOutputStream out = new DataOutputStream(
+                         new BufferedOutputStream(new FileOutputStream(dest)))) {
+                out.writeInt(DELTA_MAGIC);
+                out.writeInt(current.pageSize);
+                out.writeInt(current.pageCount);
+                out.write(parent.sha256);
+                out.write(current.sha256);
+                out.writeInt(changed.size());
+
+                byte[] buf = new byte[current.pageSize];
+                for (int page : changed) {
+                    in.seek((long) page * current.pageSize);
+                    in.readFully(buf);
+                    out.writeInt(page);
+                    out.writeInt(current.crcs[page]);
+                    out.write(buf);
+                }
+            }
+
+            current.write(manifestFile(dest));
+            report.pagesWritten = changed.size();
+            report.bytesWritten = dest.length();
+            return report;
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Takes whichever backup is due in {@code dir}: a full one when the newest is
+     * a day old, otherwise a delta against it when the newest backup of either
+     * kind is 15 minutes old. Taking a full one prunes the generation before the
+     * previous full. Returns null when nothing was due or another process or
+     * thread is already backing up into {@code dir}.
+     */
+    public BackupReport scheduled(File dir) throws SQLException, IOException {
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Cannot create backup directory " + dir);
+
+        try (FileChannel channel = FileChannel.open(new File(dir, "backup.lock").toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            if (lock == null) return null;
+
+            long now = System.currentTimeMillis();
+            String stamp = LocalDateTime.now().format(STAMP);
+            List<File> fulls = backups(dir, FULL_PREFIX);
+            File full = fulls.isEmpty() ? null : fulls.get(0);
+            if (full != null && now - full.lastModified() < DEFAULT_FULL_INTERVAL_MS) {
+                List<File> deltas = backups(dir, DELTA_PREFIX);
+                long newest = deltas.isEmpty() ? full.lastModified()
+                        : Math.max(full.lastModified(), deltas.get(0).lastModified());
+                if (now - newest < DEFAULT_DELTA_INTERVAL_MS) return null;
+                try {
+                    return delta(manifestFile(full), new File(dir, DELTA_PREFIX + stamp + FILE_SUFFIX));
+                } catch (IOException ex) {
+                    // E.g. the page size changed or the full's manifest is damaged
+                    System.err.println("Delta against " + full + " failed, taking a full backup: " + ex.getMessage());
+                }
+            }
+
+            BackupReport report = full(new File(dir, FULL_PREFIX + stamp + FILE_SUFFIX));
+            if (full != null) prune(dir, full.lastModified());
+            return report;
+        } catch (OverlappingFileLockException ex) {
+            return null;
+        }
+    }
+
+    /** Completed backups with {@code prefix} in {@code dir}, newest first. */
+    private static List<File> backups(File dir, String prefix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(FILE_SUFFIX));
+        List<File> done = new ArrayList<>();
+        if (files == null) return done;
+        for (File file : files) {
+            // The manifest is written last, so a backup cut short has none
+            if (manifestFile(file).isFile()) done.add(file);
+        }
+        done.sort(Comparator.comparingLong(File::lastModified).reversed());
+        return done;
+    }
+
+    /** Deletes backups, and their manifests, older than {@code keepFrom}. */
+    private static void prune(File dir, long keepFrom) throws IOException {
+        for (String prefix : new String[] {FULL_PREFIX, DELTA_PREFIX}) {
+            for (File file : backups(dir, prefix)) {
+                if (file.lastModified() < keepFrom) {
+                    Files.deleteIfExists(manifestFile(file).toPath());
+                    Files.deleteIfExists(file.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedules backups into backups/ on a daemon thread, checking once a minute
+     * whether one is due.
+     */
+    public static ScheduledExecutorService startDefault() {
+        File dir = new File("backups");
+        InventoryBackup backup = new InventoryBackup();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "inventory-backup");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                BackupReport report = backup.scheduled(dir);
+                if (report != null) System.out.println("Inventory backup: " + report);
+            } catch (SQLException | IOException ex) {
+                System.err.println("Inventory backup failed: " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }, 1, 1, TimeUnit.MINUTES);
+        return scheduler;
+    }
+
+    /**
+     * Rebuilds a database file from a full backup and its deltas (oldest first),
+     * verifying checksums at every step, and finishes with an integrity check.
+     * The verified file is written into {@code target} through the SQLite restore
+     * API rather than moved over it, so a -wal left next to {@code target} by a
+     * crashed writer is overwritten instead of being replayed on the next open.
+     */
+    public void restore(File full, List<File> deltas, File target) throws SQLException, IOException {
+        File work = new File(target.getPath() + ".restoring");
+        Files.copy(full.toPath(), work.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        try {
+            Manifest expected = Manifest.read(manifestFile(full));
+            if (!Arrays.equals(sha256(work), expected.sha256))
+                throw new IOException("Checksum mismatch in full backup " + full);
+
+            for (File delta : deltas) {
+                applyDelta(delta, work);
+            }
+
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + work.getPath());
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("PRAGMA integrity_check")) {
+                String result = rs.next() ? rs.getString(1) : "no result";
+                if (!"ok".equals(result))
+                    throw new SQLException("Integrity check failed on restored file: " + result);
+            }
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + target.getPath())) {
+                DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+                int rc = db.restore("main", work.getPath(), null, 100, 30, -1);
+                if (rc != SQLITE_DONE && rc != 0)
+                    throw new SQLException("Restore into " + target + " failed with SQLite code " + rc
+                            + "; if it is not a readable database, move it and its -wal/-shm aside first");
+            }
+        } finally {
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                Files.deleteIfExists(new File(work.getPath() + suffix).toPath());
+            }
+        }
+    }
+
+    /**
+     * Replaces the contents of the live inventory.db with a restored file,
+     * through the SQLite restore API so open connections see a consistent switch.
+     */
+    public void install(File restored) throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+            int rc = db.restore("main", restored.getPath(), null, 100, 30, -1);
+            if (rc != SQLITE_DONE && rc != 0)
+                throw new SQLException("Restore failed with SQLite code " + rc);
+        }
+    }
+
+    private void applyDelta(File delta, File work) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(delta)));
+             RandomAccessFile out = new RandomAccessFile(work, "rw")) {
+            if (in.readInt() != DELTA_MAGIC)
+                throw new IOException("Not a delta backup: " + delta);
+            int pageSize = in.readInt();
+            int pageCount = in.readInt();
+            byte[] baseSha = new byte[32];
+            byte[] targetSha = new byte[32];
+            in.readFully(baseSha);
+            in.readFully(targetSha);
+
+            if (!Arrays.equals(sha256(work), baseSha))
+                throw new IOException("Delta " + delta + " does not apply to the preceding backup");
+
+            int changed = in.readInt();
+            byte[] buf = new byte[pageSize];
+            CRC32 crc = new CRC32();
+            for (int i = 0; i < changed; i++) {
+                int page = in.readInt();
+                int expectedCrc = in.readInt();
+                in.readFully(buf);
+                crc.reset();
+                crc.update(buf);
+                if ((int) crc.getValue() != expectedCrc)
+                    throw new IOException("Checksum mismatch for page " + page + " in " + delta);
+                out.seek((long) page * pageSize);
+                out.write(buf);
+            }
+            out.setLength((long) pageCount * pageSize);
+        }
+
+        if (!Arrays.equals(sha256(work), Manifest.read(manifestFile(delta)).sha256))
+            throw new IOException("Checksum mismatch after applying " + delta);
+    }
+
+    /**
+     * Throttled online copy of inventory.db into {@code dest}.
+     */
+    BackupReport snapshot(File dest) throws SQLException {
+        BackupReport report = new BackupReport();
+        long start = System.nanoTime();
+
+        try (Connection conn = Database.getConnection()) {
+            // Outside WAL mode the held read lock would block every commit for the
+            // whole copy, and without it concurrent commits restart the copy
+            if (!isWal(conn))
+                throw new SQLException("Online backup needs inventory.db in WAL mode");
+
+            // Reads inside one transaction, so every step sees the same snapshot
+            conn.setAutoCommit(false);
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM sqlite_master")) {
+                rs.next();
+            }
+            DB db = conn.unwrap(SQLiteConnection.class).getDatabase();
+            try {
+                int rc = db.backup("main", dest.getPath(), new Throttle(report), 100, 30, pagesPerStep);
+                if (rc != SQLITE_DONE && rc != 0)
+                    throw new SQLException("Backup failed with SQLite code " + rc);
+            } finally {
+                conn.rollback();
+            }
+        }
+
+        report.millis = (System.nanoTime() - start) / 1_000_000;
+        return report;
+    }
+
+    private static boolean isWal(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA journal_mode")) {
+            return rs.next() && "wal".equalsIgnoreCase(rs.getString(1));
+        }
+    }
+
+    /** Sleeps between backup steps, and counts restarts (expected to stay 0). */
+    private class Throttle implements DB.ProgressObserver {
+        private final BackupReport report;
+        private int lastRemaining = Integer.MAX_VALUE;
+
+        Throttle(BackupReport report) {
+            this.report = report;
+        }
+
+        @Override
+        public void progress(int remaining, int pageCount) {
+            report.steps++;
+            if (remaining > lastRemaining) {
+                report.restarts++;
+            }
+            lastRemaining = remaining;
+
+            if (remaining > 0 && pauseMs > 0) {
+                try {
+                    Thread.sleep(pauseMs);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    static File manifestFile(File backup) {
+        return new File(backup.getPath() + ".manifest");
+    }
+
+    static byte[] sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] buf = new byte[1 << 16];
+        try (InputStream in = new FileInputStream(file)) {
+            int n;
+            while ((n = in.read(buf)) > 0) digest.update(buf, 0, n);
+        }
+        return digest.digest();
+    }
+
+    /** Per-page CRC32s and whole-file SHA-256 of one backup state. */
+    static class Manifest {
+        final int pageSize;
+        final int pageCount;
+        final byte[] sha256;
+        final int[] crcs;
+
+        Manifest(int pageSize, int pageCount, byte[] sha256, int[] crcs) {
+            this.pageSize = pageSize;
+            this.pageCount = pageCount;
+            this.sha256 = sha256;
+            this.crcs = crcs;
+        }
+
+        static Manifest of(File dbFile) throws IOException {
+            int pageSize;
+            try (RandomAccessFile in = new RandomAccessFile(dbFile, "r")) {
+                // Header bytes 16-17 hold the page size; 1 means 65536
+                in.seek(16);
+                int raw = in.readUnsignedShort();
+                pageSize = raw == 1 ? 65536 : raw;
+            }
+            int pageCount = (int) (dbFile.length() / pageSize);
+
+            int[] crcs = new int[pageCount];
+            byte[] buf = new byte[pageSize];
+            CRC32 crc = new CRC32();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(dbFile)))) {
+                for (int page = 0; page < pageCount; page++) {
+                    in.readFully(buf);
+                    crc.reset();
+                    crc.update(buf);
+                    crcs[page] = (int) crc.getValue();
+                }
+            }
+            return new Manifest(pageSize, pageCount, sha256(dbFile), crcs);
+        }
+
+        static Manifest read(File file) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MANIFEST_MAGIC)
+                    throw new IOException("Not a backup manifest: " + file);
+                int pageSize = in.readInt();
+                int pageCount = in.readInt();
+                byte[] sha = new byte[32];
+                in.readFully(sha);
+                int[] crcs = new int[pageCount];
+                for (int i = 0; i < pageCount; i++) crcs[i] = in.readInt();
+                return new Manifest(pageSize, pageCount, sha, crcs);
+            }
+        }
+
+        void write(File file) throws IOException {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                out.writeInt(MANIFEST_MAGIC);
+                out.writeInt(pageSize);
+                out.writeInt(pageCount);
+                out.write(sha256);
+                for (int crc : crcs) out.writeInt(crc);
+            }
+        }
+    }
+
+    /** Statistics for one backup run. */
+    public static class BackupReport {
+        public int steps;
+        public int restarts;
+        public long pagesWritten;
+        public long bytesWritten;
+        public long millis;
+
+        @Override
+        public String toString() {
+            return String.format("BackupReport [Pages=%d, Bytes=%d, Millis=%d, Steps=%d, Restarts=%d]",
+                    pagesWritten, bytesWritten, millis, steps, restarts);
+        }
+    }
+
+    /**
+     * Usage:
+     *   java InventoryBackup full &lt;dest&gt;
+     *   java InventoryBackup delta &lt;parent-backup&gt; &lt;dest&gt;
+     *   java InventoryBackup restore &lt;target&gt; &lt;full&gt; [delta...]
+     *   java InventoryBackup scheduled &lt;dir&gt;
+     */
+    public static void main(String[] args) throws Exception {
+        InventoryBackup backup = new InventoryBackup();
+        if (args.length >= 2 && args[0].equals("full")) {
+            System.out.println(backup.full(new File(args[1])));
+        } else if (args.length >= 3 && args[0].equals("delta")) {
+            System.out.println(backup.delta(manifestFile(new File(args[1])), new File(args[2])));
+        } else if (args.length >= 2 && args[0].equals("scheduled")) {
+            BackupReport report = backup.scheduled(new File(args[1]));
+            System.out.println(report != null ? report : "No backup due");
+        } else if (args.length >= 3 && args[0].equals("restore")) {
+            List<File> deltas = new ArrayList<>();
+            for (int i = 3; i < args.length; i++) deltas.add(new File(args[i]));
+            backup.restore(new File(args[2]), deltas, new File(args[1]));
+            System.out.println("Restored into " + args[1]);
+        } else {
+            System.err.println("Usage: InventoryBackup full <dest> | delta <parent> <dest> | scheduled <dir>"
+                    + " | restore <target> <full> [delta...]");
+        }
+    }
+}
@@ -0,0 +1,477 @@
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.*;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LowStockAlertEngine.java
+ * Created by Arvind Kumar S
+ * Watches product quantities through the stock_changes log written by triggers
+ * and raises alerts when a product drops to or below its threshold.
+ *
+ * Only products that are currently at risk are held in memory, ordered by
+ * quantity, so each poll costs O(changes) rather than O(catalog).
+ *
+ * Several engines (one per running form, or a soak run) may share a file. Each
+ * records its position in stock_consumers and the log is trimmed to the slowest
+ * one. An engine that has not polled for an hour loses its claim, and it
+ * re-seeds from the catalog if it ever comes back. Every engine sees the same
+ * changes, so an alert is claimed in stock_alerts by the change that caused it
+ * and only the first engine to claim it delivers it. Thresholds are re-read on
+ * every poll, so one engine's changes reach the others.
+ */
+public class LowStockAlertEngine implements Runnable {
+
+    private static final int DEFAULT_THRESHOLD = 5;
+    private static final int BATCH_SIZE = 1000;
+    private static final long CONSUMER_LEASE_MS = TimeUnit.HOURS.toMillis(1);
+
+    public enum AlertType { LOW_STOCK, OUT_OF_STOCK, RESTOCKED }
+
+    private final AlertSink sink;
+    private final int defaultThreshold;
+
+    private final Map<Integer, Integer> productThresholds = new HashMap<>();
+    private final Map<String, Integer> categoryThresholds = new HashMap<>();
+
+    // At-risk products by id, plus the same entries sorted most critical first
+    private final Map<Integer, AtRisk> atRisk = new HashMap<>();
+    private final TreeSet<AtRisk> byQuantity = new TreeSet<>(
+            Comparator.comparingInt((AtRisk e) -> e.quantity).thenComparingInt(e -> e.productId));
+
+    private final String consumerId = UUID.randomUUID().toString();
+    private long lastSeq;
+
+    /**
+     * @param sink where alerts are delivered
+     * @param defaultThreshold threshold for products with no product or category override; 0 disables
+     */
+    public LowStockAlertEngine(AlertSink sink, int defaultThreshold) {
+        if (defaultThreshold < 0)
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        this.sink = sink;
+        this.defaultThreshold = defaultThreshold;
+    }
+
+    /**
+     * Loads thresholds and the current at-risk set. The seed query walks the
+     * quantity index up to the highest threshold only, not the whole catalog.
+     */
+    public synchronized void initialize() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            loadThresholds(conn);
+            // Anything logged before this point is already reflected by the seed below
+            lastSeq = claimChanges(conn, consumerId);
+            seed(conn);
+        }
+    }
+
+    /** Replaces the thresholds with those stored; true if any differ from before. */
+    private boolean loadThresholds(Connection conn) throws SQLException {
+        Map<Integer, Integer> products = new HashMap<>();
+        Map<String, Integer> categories = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT product_id, category, threshold FROM stock_thresholds")) {
+            while (rs.next()) {
+                int productId = rs.getInt("product_id");
+                if (!rs.wasNull()) {
+                    products.put(productId, rs.getInt("threshold"));
+                } else {
+                    categories.put(rs.getString("category"), rs.getInt("threshold"));
+                }
+            }
+        }
+        if (products.equals(productThresholds) && categories.equals(categoryThresholds)) return false;
+        productThresholds.clear();
+        productThresholds.putAll(products);
+        categoryThresholds.clear();
+        categoryThresholds.putAll(categories);
+        return true;
+    }
+
+    /** Rebuilds the at-risk set from the catalog, without alerts. */
+    private void seed(Connection conn) throws SQLException {
+        atRisk.clear();
+        byQuantity.clear();
+        String sql = "SELECT id, category, quantity FROM products "
+                + "WHERE deleted_at IS NULL AND quantity <= ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, maxThreshold());
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    int id = rs.getInt("id");
+                    String category = rs.getString("category");
+                    int quantity = rs.getInt("quantity");
+                    int threshold = thresholdFor(id, category);
+                    if (quantity <= threshold) {
+                        track(new AtRisk(id, category, quantity, threshold));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies every change logged since the last poll, emits alerts for state
+     * transitions no other engine has claimed, records how far this engine has
+     * read, then trims the part of the log every engine has consumed. A threshold
+     * another engine changed re-seeds the at-risk set.
+     *
+     * @return number of changes processed
+     */
+    public synchronized int poll() throws SQLException {
+        if (!renewClaim()) {
+            // Lease expired, so changes past lastSeq may already be trimmed
+            System.err.println("Low-stock engine lost its place in stock_changes; re-seeding from the catalog");
+            initialize();
+            return 0;
+        }
+
+        int processed = 0;
+        try (Connection conn = Database.getConnection();
+             PreparedStatement ps = conn.prepareStatement(
+                     "SELECT seq, product_id, category, quantity, removed FROM stock_changes "
+                     + "WHERE seq > ? ORDER BY seq LIMIT ?");
+             PreparedStatement claim = conn.prepareStatement(
+                     "INSERT OR IGNORE INTO stock_alerts (seq) VALUES (?)")) {
+            int rows;
+            do {
+                rows = 0;
+                ps.setLong(1, lastSeq);
+                ps.setInt(2, BATCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        lastSeq = rs.getLong("seq");
+                        int productId = rs.getInt("product_id");
+                        if (rs.getInt("removed") != 0) {
+                            untrack(productId);
+                        } else {
+                            Alert alert = reevaluate(productId, rs.getString("category"), rs.getInt("quantity"));
+                            if (alert != null) {
+                                claim.setLong(1, lastSeq);
+                                if (claim.executeUpdate() > 0) sink.emit(alert);
+                            }
+                        }
+                        rows++;
+                    }
+                }
+                processed += rows;
+            } while (rows == BATCH_SIZE);
+
+            if (processed > 0) {
+                renewClaim();
+            }
+            if (loadThresholds(conn)) {
+                seed(conn);
+            }
+            trimChanges(conn);
+        }
+        return processed;
+    }
+
+    /**
+     * Drops engines that have not polled within the lease, then trims the log and
+     * its alert claims to the slowest remaining one. With none left the whole log
+     * goes: an engine started later seeds from the catalog, not from the log.
+     *
+     * @return number of log entries removed
+     */
+    static int trimChanges(Connection conn) throws SQLException {
+        try (PreparedStatement expire = conn.prepareStatement("DELETE FROM stock_consumers WHERE seen_at < ?")) {
+            expire.setLong(1, System.currentTimeMillis() - CONSUMER_LEASE_MS);
+            expire.executeUpdate();
+        }
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM stock_alerts WHERE seq <= COALESCE("
+                    + "(SELECT MIN(last_seq) FROM stock_consumers), (SELECT MAX(seq) FROM stock_alerts))");
+            return stmt.executeUpdate("DELETE FROM stock_changes WHERE seq <= COALESCE("
+                    + "(SELECT MIN(last_seq) FROM stock_consumers), (SELECT MAX(seq) FROM stock_changes))");
+        }
+    }
+
+    /**
+     * Registers {@code consumer} at the end of the log and returns that position.
+     * Done in one statement, so a concurrent trim cannot pass it.
+     */
+    static long claimChanges(Connection conn, String consumer) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "INSERT INTO stock_consumers (consumer, last_seq, seen_at) "
+                + "SELECT ?, COALESCE(MAX(seq), 0), ? FROM stock_changes WHERE true "
+                + "ON CONFLICT(consumer) DO UPDATE SET last_seq = excluded.last_seq, seen_at = excluded.seen_at")) {
+            ps.setString(1, consumer);
+            ps.setLong(2, System.currentTimeMillis());
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = conn.prepareStatement(
+                "SELECT last_seq FROM stock_consumers WHERE consumer = ?")) {
+            ps.setString(1, consumer);
+            try (ResultSet rs = ps.executeQuery()) {
+                return rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+    }
+
+    /** Records how far {@code consumer} has read; false if its claim expired and was removed. */
+    static boolean renewClaim(Connection conn, String consumer, long lastSeq) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(
+                "UPDATE stock_consumers SET last_seq = ?, seen_at = ? WHERE consumer = ?")) {
+            ps.setLong(1, lastSeq);
+            ps.setLong(2, System.currentTimeMillis());
+            ps.setString(3, consumer);
+            return ps.executeUpdate() > 0;
+        }
+    }
+
+    private boolean renewClaim() throws SQLException {
+        try (Connection conn = Database.getConnection()) {
+            return renewClaim(conn, consumerId, lastSeq);
+        }
+    }
+
+    /**
+     * Stores a per-product threshold and re-evaluates that product. The stock did
+     * not change, so this moves it in or out of the at-risk set without alerts.
+     */
+    public synchronized void setProductThreshold(int productId, int threshold) throws SQLException {
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        try (Connection conn = Database.getConnection()) {
+            PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO stock_thresholds (product_id, threshold) VALUES (?, ?) "
+                    + "ON CONFLICT(product_id) DO UPDATE SET threshold = excluded.threshold");
+            ps.setInt(1, productId);
+            ps.setInt(2, threshold);
+            ps.executeUpdate();
+            productThresholds.put(productId, threshold);
+
+            PreparedStatement row = conn.prepareStatement(
+                    "SELECT category, quantity FROM products WHERE id = ? AND deleted_at IS NULL");
+            row.setInt(1, productId);
+            try (ResultSet rs = row.executeQuery()) {
+                if (rs.next()) {
+                    reevaluate(productId, rs.getString("category"), rs.getInt("quantity"));
+                } else {
+                    untrack(productId);
+                }
+            }
+        }
+    }
+
+    /** Stores a per-category threshold and re-evaluates the products it governs, without alerts. */
+    public synchronized void setCategoryThreshold(String category, int threshold) throws SQLException {
+        if (category == null || category.trim().isEmpty())
+            throw new IllegalArgumentException("Category cannot be empty");
+        if (threshold < 0)
+            throw new IllegalArgumentException("Threshold cannot be negative");
+        try (Connection conn = Database.getConnection()) {
+            PreparedStatement ps = conn.prepareStatement(
+                    "INSERT INTO stock_thresholds (category, threshold) VALUES (?, ?) "
+                    + "ON CONFLICT(category) DO UPDATE SET threshold = excluded.threshold");
+            ps.setString(1, category);
+            ps.setInt(2, threshold);
+            ps.executeUpdate();
+            categoryThresholds.put(category, threshold);
+
+            // Drop tracked entries the new threshold no longer covers
+            for (AtRisk entry : new ArrayList<>(atRisk.values())) {
+                if (category.equals(entry.category)) {
+                    reevaluate(entry.productId, entry.category, entry.quantity);
+                }
+            }
+
+            // Pick up products the new threshold now covers
+            PreparedStatement rows = conn.prepareStatement(
+                    "SELECT id, quantity FROM products WHERE deleted_at IS NULL AND category = ? AND quantity <= ?");
+            rows.setString(1, category);
+            rows.setInt(2, threshold);
+            try (ResultSet rs = rows.executeQuery()) {
+                while (rs.next()) {
+                    reevaluate(rs.getInt("id"), category, rs.getInt("quantity"));
+                }
+            }
+        }
+    }
+
+    /** Snapshot of at-risk products, lowest quantity first. */
+    public synchronized List<AtRisk> atRiskProducts() {
+        return new ArrayList<>(byQuantity);
+    }
+
+    @Override
+    public void run() {
+        try {
+            poll();
+        } catch (SQLException ex) {
+            System.err.println("Low-stock poll failed: " + ex.getMessage());
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Initializes the engine and polls the change log every {@code periodSeconds}
+     * on a daemon thread.
+     */
+    public ScheduledExecutorService start(long periodSeconds) throws SQLException {
+        initialize();
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "low-stock-alerts");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+        return scheduler;
+    }
+
+    /** Default setup: threshold 5, alerts appended to low_stock_alerts.log, polled every 10 seconds. */
+    public static ScheduledExecutorService startDefault() {
+        try {
+            return new LowStockAlertEngine(new FileAlertSink(new File("low_stock_alerts.log")), DEFAULT_THRESHOLD)
+                    .start(10);
+        } catch (SQLException ex) {
+            System.err.println("Low-stock alerts disabled: " + ex.getMessage());
+            ex.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Tracks or untracks the product against its current threshold and returns
+     * the transition that caused, or null. Only a stock change should alert on it.
+     */
+    private Alert reevaluate(int productId, String category, int quantity) {
+        int threshold = thresholdFor(productId, category);
+        AtRisk previous = atRisk.get(productId);
+
+        if (quantity > threshold) {
+            if (previous == null) return null;
+            untrack(productId);
+            return new Alert(AlertType.RESTOCKED, productId, category, quantity, threshold);
+        }
+
+        track(new AtRisk(productId, category, quantity, threshold));
+        if (quantity == 0) {
+            if (previous == null || previous.quantity > 0) {
+                return new Alert(AlertType.OUT_OF_STOCK, productId, category, quantity, threshold);
+            }
+        } else if (previous == null) {
+            return new Alert(AlertType.LOW_STOCK, productId, category, quantity, threshold);
+        }
+        return null;
+    }
+
+    private void track(AtRisk entry) {
+        untrack(entry.productId);
+        atRisk.put(entry.productId, entry);
+        byQuantity.add(entry);
+    }
+
+    private void untrack(int productId) {
+        AtRisk old = atRisk.remove(productId);
+        if (old != null) byQuantity.remove(old);
+    }
+
+    private int thresholdFor(int productId, String category) {
+        Integer threshold = productThresholds.get(productId);
+        if (threshold == null && category != null) threshold = categoryThresholds.get(category);
+        return threshold != null ? threshold : defaultThreshold;
+    }
+
+    private int maxThreshold() {
+        int max = defaultThreshold;
+        for (int t : productThresholds.values()) max = Math.max(max, t);
+        for (int t : categoryThresholds.values()) max = Math.max(max, t);
+        return max;
+    }
+
+    /** A product currently at or below its threshold. */
+    public static class AtRisk {
+        public final int productId;
+        public final String category;
+        public final int quantity;
+        public final int threshold;
+
+        AtRisk(int productId, String category, int quantity, int threshold) {
+            this.productId = productId;
+            this.category = category;
+            this.quantity = quantity;
+            this.threshold = threshold;
+        }
+    }
+
+    /** A stock state transition. */
+    public static class Alert {
+        public final AlertType type;
+        public final int productId;
+        public final String category;
+        public final int quantity;
+        public final int threshold;
+        public final Instant raisedAt;
+
+        Alert(AlertType type, int productId, String category, int quantity, int threshold) {
+            this.type = type;
+            this.productId = productId;
+            this.category = category;
+            this.quantity = quantity;
+            this.threshold = threshold;
+            this.raisedAt = Instant.now();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %s [ProductID=%d, Category='%s', Quantity=%d, Threshold=%d]",
+                    raisedAt, type, productId, category, quantity, threshold);
+        }
+    }
+
+    /** Receives alerts; called on the polling thread. */
+    public interface AlertSink {
+        void emit(Alert alert);
+    }
+
+    /** Appends one line per alert to a local file. */
+    public static class FileAlertSink implements AlertSink {
+        private final File file;
+
+        public FileAlertSink(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public void emit(Alert alert) {
+            try (PrintWriter out = new PrintWriter(new FileWriter(file, true))) {
+                out.println(alert);
+            } catch (IOException ex) {
+                System.err.println("Cannot write alert to " + file + ": " + ex.getMessage());
+            }
+        }
+    }
+
+    /** Hands alerts to an in-process queue for another thread to consume. */
+    public static class QueueAlertSink implements AlertSink {
+        private final BlockingQueue<Alert> queue;
+
+        public QueueAlertSink(BlockingQueue<Alert> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void emit(Alert alert) {
+            if (!queue.offer(alert)) {
+                System.err.println("Alert queue full, dropped: " + alert);
+            }
+        }
+    }
+}
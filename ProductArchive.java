@@ -0,0 +1,336 @@
+import com.ecommerce.model.Product;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.sql.*;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductArchive.java
+ * Created by Arvind Kumar S
+ * Moves stale products out of inventory.db into quarterly archive files and
+ * searches them on demand, so the hot products table stays small.
+ */
+public class ProductArchive {
+
+    private static final long DEFAULT_OUT_OF_STOCK_AGE_MS = TimeUnit.DAYS.toMillis(90);
+    private static final long DEFAULT_INACTIVE_AGE_MS = TimeUnit.DAYS.toMillis(365);
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final LocalTime DEFAULT_RUN_AT = LocalTime.of(3, 0);
+
+    private static final String FILE_PREFIX = "products_";
+    private static final String FILE_SUFFIX = ".db";
+
+    // Calendar quarter of updated_at, e.g. "2026_Q3"
+    private static final String PERIOD_EXPR =
+            "strftime('%Y', updated_at / 1000, 'unixepoch') || '_Q' || "
+            + "((CAST(strftime('%m', updated_at / 1000, 'unixepoch') AS INTEGER) + 2) / 3)";
+
+    // Out of stock since the first cutoff, or untouched since the second
+    private static final String CANDIDATE_FILTER =
+            "deleted_at IS NULL AND updated_at < ? AND (quantity = 0 OR updated_at < ?)";
+
+    private final File archiveDir;
+    private final long outOfStockAgeMs;
+    private final long inactiveAgeMs;
+    private final int chunkSize;
+
+    /**
+     * @param archiveDir directory holding one archive file per quarter
+     * @param outOfStockAgeMs how long a product may sit at quantity 0 before it is archived
+     * @param inactiveAgeMs how long any product may go unmodified before it is archived
+     * @param chunkSize rows moved per transaction
+     */
+    public ProductArchive(File archiveDir, long outOfStockAgeMs, long inactiveAgeMs, int chunkSize) {
+        if (outOfStockAgeMs > inactiveAgeMs)
+            throw new IllegalArgumentException("Out-of-stock age cannot exceed inactive age");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive");
+        this.archiveDir = archiveDir;
+        this.outOfStockAgeMs = outOfStockAgeMs;
+        this.inactiveAgeMs = inactiveAgeMs;
+        this.chunkSize = chunkSize;
+    }
+
+    /** Default policy: archive/ next to inventory.db, 90 days out of stock or a year inactive. */
+    public ProductArchive() {
+        this(new File("archive"), DEFAULT_OUT_OF_STOCK_AGE_MS, DEFAULT_INACTIVE_AGE_MS, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Moves every product matching the policy into its quarter's archive file.
+     * In WAL mode a transaction spanning attached files is only atomic per file,
+     * so each chunk is first committed to the archive and only then deleted from
+     * inventory.db. A product changed or deleted in between stays live and its
+     * copy is dropped again. A crash in between leaves a product in both files;
+     * the live row wins and the copy is cleared at the start of the next run.
+     * That clearing would also hit another run's fresh copies, so runs against
+     * the same directory are serialized by a lock file; a run that finds it
+     * held does nothing.
+     *
+     * @return number of products archived
+     */
+    public int archive() throws SQLException {
+        if (!archiveDir.isDirectory() && !archiveDir.mkdirs())
+            throw new SQLException("Cannot create archive directory " + archiveDir);
+
+        try (FileChannel channel = FileChannel.open(new File(archiveDir, "archive.lock").toPath(),
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileLock lock = channel.tryLock()) {
+            return lock != null ? archiveLocked() : 0;
+        } catch (OverlappingFileLockException ex) {
+            return 0;
+        } catch (IOException ex) {
+            throw new SQLException("Cannot lock archive directory " + archiveDir, ex);
+        }
+    }
+
+    private int archiveLocked() throws SQLException {
+        long now = System.currentTimeMillis();
+        long outOfStockCutoff = now - outOfStockAgeMs;
+        long inactiveCutoff = now - inactiveAgeMs;
+        int total = 0;
+
+        try (Connection conn = Database.getConnection()) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE TEMP TABLE IF NOT EXISTS archive_batch (id INTEGER PRIMARY KEY)");
+            }
+
+            for (File file : archiveFiles()) {
+                clearLeftovers(conn, file);
+            }
+            for (String period : candidatePeriods(conn, outOfStockCutoff, inactiveCutoff)) {
+                total += archivePeriod(conn, period, outOfStockCutoff, inactiveCutoff);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Schedules the default archive run on a daemon thread, daily at 03:00. Every
+     * running form schedules one; the first to take the lock does the work and
+     * the others find nothing left to move.
+     */
+    public static ScheduledExecutorService startDefault() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-archive");
+            t.setDaemon(true);
+            return t;
+        });
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime next = now.toLocalDate().atTime(DEFAULT_RUN_AT);
+        if (!next.isAfter(now)) next = next.plusDays(1);
+        scheduler.scheduleAtFixedRate(() -> {
+            try {
+                int moved = new ProductArchive().archive();
+                if (moved > 0) System.out.println("Product archive: moved " + moved + " products");
+            } catch (SQLException ex) {
+                System.err.println("Product archive failed: " + ex.getMessage());
+                ex.printStackTrace();
+            }
+        }, Duration.between(now, next).toMillis(), TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        return scheduler;
+    }
+
+    private List<String> candidatePeriods(Connection conn, long outOfStockCutoff, long inactiveCutoff)
+            throws SQLException {
+        List<String> periods = new ArrayList<>();
+        String sql = "SELECT DISTINCT " + PERIOD_EXPR + " FROM products WHERE " + CANDIDATE_FILTER;
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setLong(1, outOfStockCutoff);
+            ps.setLong(2, inactiveCutoff);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) periods.add(rs.getString(1));
+            }
+        }
+        return periods;
+    }
+
+    private int archivePeriod(Connection conn, String period, long outOfStockCutoff, long inactiveCutoff)
+            throws SQLException {
+        File file = new File(archiveDir, FILE_PREFIX + period + FILE_SUFFIX);
+        int moved = 0;
+
+        attach(conn, file);
+        try {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("""
+                        CREATE TABLE IF NOT EXISTS arc.products (
+                            id INTEGER PRIMARY KEY,
+                            name TEXT NOT NULL,
+                            category TEXT,
+                            price REAL NOT NULL,
+                            quantity INTEGER NOT NULL,
+                            description TEXT,
+                            updated_at INTEGER,
+                            archived_at INTEGER NOT NULL
+                        )
+                        """);
+                stmt.execute("CREATE INDEX IF NOT EXISTS arc.idx_archive_name ON products(name)");
+            }
+
+            String select = "INSERT INTO temp.archive_batch (id) SELECT id FROM main.products WHERE "
+                    + CANDIDATE_FILTER + " AND " + PERIOD_EXPR + " = ? LIMIT ?";
+            try (PreparedStatement pick = conn.prepareStatement(select);
+                 Statement stmt = conn.createStatement()) {
+                conn.setAutoCommit(false);
+                int rows;
+                do {
+                    pick.setLong(1, outOfStockCutoff);
+                    pick.setLong(2, inactiveCutoff);
+                    pick.setString(3, period);
+                    pick.setInt(4, chunkSize);
+                    rows = pick.executeUpdate();
+
+                    // Copy first and make it durable in the archive file
+                    stmt.executeUpdate("""
+                            INSERT OR REPLACE INTO arc.products
+                                (id, name, category, price, quantity, description, updated_at, archived_at)
+                            SELECT id, name, category, price, quantity, description, updated_at, %s
+                            FROM main.products
+                            WHERE id IN (SELECT id FROM temp.archive_batch) AND deleted_at IS NULL
+                            """.formatted(Database.NOW_MILLIS));
+                    conn.commit();
+
+                    // Then delete, skipping rows a form changed or deleted since the
+                    // copy; they stay live, so their stale copy goes in the same step
+                    stmt.executeUpdate("""
+                            DELETE FROM main.products
+                            WHERE id IN (SELECT id FROM temp.archive_batch) AND deleted_at IS NULL
+                              AND updated_at IS (SELECT a.updated_at FROM arc.products a WHERE a.id = main.products.id)
+                            """);
+                    stmt.executeUpdate("""
+                            DELETE FROM arc.products
+                            WHERE id IN (SELECT id FROM temp.archive_batch) AND id IN (SELECT id FROM main.products)
+                            """);
+                    List<Integer> ids = new ArrayList<>(rows);
+                    try (ResultSet rs = stmt.executeQuery(
+                            "SELECT id FROM temp.archive_batch WHERE id NOT IN (SELECT id FROM main.products)")) {
+                        while (rs.next()) ids.add(rs.getInt(1));
+                    }
+                    stmt.executeUpdate("DELETE FROM temp.archive_batch");
+                    conn.commit();
+                    moved += ids.size();
+                    for (int id : ids) ProductSearchIndex.productRemoved(id);
+                } while (rows == chunkSize);
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } finally {
+            detach(conn);
+        }
+        return moved;
+    }
+
+    /**
+     * Removes archived copies of products that are still in inventory.db, left
+     * behind by a run interrupted between its copy and delete. Ids come from
+     * AUTOINCREMENT and are never reused, so such a copy is always stale.
+     */
+    private void clearLeftovers(Connection conn, File file) throws SQLException {
+        attach(conn, file);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.executeUpdate("DELETE FROM arc.products WHERE id IN (SELECT id FROM main.products)");
+        } finally {
+            detach(conn);
+        }
+    }
+
+    private static void attach(Connection conn, File file) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ATTACH DATABASE '" + file.getPath().replace("'", "''") + "' AS arc");
+        }
+    }
+
+    private static void detach(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DETACH DATABASE arc");
+        }
+    }
+
+    /**
+     * Searches the hot table first. Archive files are only opened when
+     * {@code includeArchives} is set and the hot table returned fewer than {@code limit} hits;
+     * they are scanned newest quarter first.
+     */
+    public List<Hit> search(String text, boolean includeArchives, int limit) throws SQLException {
+        List<Hit> hits = new ArrayList<>();
+        String pattern = "%" + text.trim().toLowerCase() + "%";
+
+        try (Connection conn = Database.getConnection()) {
+            String sql = "SELECT * FROM products WHERE deleted_at IS NULL "
+                    + "AND (LOWER(name) LIKE ? OR LOWER(category) LIKE ?) ORDER BY name LIMIT ?";
+            collect(conn, sql, pattern, limit, null, hits);
+        }
+
+        if (!includeArchives) return hits;
+
+        for (File file : archiveFiles()) {
+            if (hits.size() >= limit) break;
+            try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + file.getPath())) {
+                String sql = "SELECT * FROM products "
+                        + "WHERE LOWER(name) LIKE ? OR LOWER(category) LIKE ? ORDER BY name LIMIT ?";
+                collect(conn, sql, pattern, limit - hits.size(), file.getName(), hits);
+            }
+        }
+        return hits;
+    }
+
+    private static void collect(Connection conn, String sql, String pattern, int limit,
+                                String source, List<Hit> hits) throws SQLException {
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setString(1, pattern);
+            ps.setString(2, pattern);
+            ps.setInt(3, limit);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    hits.add(new Hit(ProductRepository.toProduct(rs), source));
+                }
+            }
+        }
+    }
+
+    /** Archive files, newest quarter first (the file names sort chronologically). */
+    File[] archiveFiles() {
+        File[] files = archiveDir.listFiles((dir, name) ->
+                name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX));
+        if (files == null) return new File[0];
+        Arrays.sort(files, Comparator.comparing(File::getName).reversed());
+        return files;
+    }
+
+    /** A search result and where it was found. */
+    public static class Hit {
+        public final Product product;
+        /** Archive file name, or {@code null} for the hot table. */
+        public final String archive;
+
+        Hit(Product product, String archive) {
+            this.product = product;
+            this.archive = archive;
+        }
+
+        public boolean isArchived() { return archive != null; }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int moved = new ProductArchive().archive();
+        System.out.println("Archived " + moved + " products.");
+    }
+}
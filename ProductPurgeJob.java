@@ -0,0 +1,170 @@
+import java.sql.*;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductPurgeJob.java
+ * Created by Arvind Kumar S
+ * Background job that removes soft-deleted products once their undo window has passed,
+ * then runs an incremental vacuum so inventory.db actually shrinks.
+ */
+public class ProductPurgeJob implements Runnable {
+
+    private static final long DEFAULT_RETENTION_MS = TimeUnit.DAYS.toMillis(7);
+    private static final int DEFAULT_CHUNK_SIZE = 500;
+    private static final long DEFAULT_CHUNK_PAUSE_MS = 200;
+
+    private final long retentionMs;
+    private final int chunkSize;
+    private final long chunkPauseMs;
+    private final LocalTime offPeakStart;
+    private final LocalTime offPeakEnd;
+
+    /**
+     * @param retentionMs how long a tombstone stays restorable before it is purged
+     * @param chunkSize rows removed per transaction
+     * @param chunkPauseMs sleep between chunks so the forms never wait long on the write lock
+     * @param offPeakStart start of the window in which the job is allowed to run
+     * @param offPeakEnd end of that window (may wrap past midnight)
+     */
+    public ProductPurgeJob(long retentionMs, int chunkSize, long chunkPauseMs,
+                           LocalTime offPeakStart, LocalTime offPeakEnd) {
+        if (retentionMs < 0)
+            throw new IllegalArgumentException("Retention cannot be negative");
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive");
+        this.retentionMs = retentionMs;
+        this.chunkSize = chunkSize;
+        this.chunkPauseMs = chunkPauseMs;
+        this.offPeakStart = offPeakStart;
+        this.offPeakEnd = offPeakEnd;
+    }
+
+    /** Default policy: 7-day undo window, purging between 02:00 and 05:00. */
+    public ProductPurgeJob() {
+        this(DEFAULT_RETENTION_MS, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_PAUSE_MS,
+                LocalTime.of(2, 0), LocalTime.of(5, 0));
+    }
+
+    /**
+     * Schedules the default job on a daemon thread. It wakes every 15 minutes and
+     * does nothing outside the off-peak window.
+     */
+    public static ScheduledExecutorService startDefault() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "product-purge");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(new ProductPurgeJob(), 1, 15, TimeUnit.MINUTES);
+        return scheduler;
+    }
+
+    @Override
+    public void run() {
+        if (!isOffPeak(LocalTime.now())) return;
+        try {
+            PurgeReport report = purge();
+            if (report.rowsPurged > 0 || report.pagesReclaimed > 0) {
+                System.out.println("Product purge: " + report);
+            }
+        } catch (SQLException ex) {
+            System.err.println("Product purge failed: " + ex.getMessage());
+            ex.printStackTrace();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Removes expired tombstones chunk by chunk, then returns free pages to the OS.
+     */
+    public PurgeReport purge() throws SQLException, InterruptedException {
+        long cutoff = System.currentTimeMillis() - retentionMs;
+        int totalRows = 0;
+
+        try (Connection conn = Database.getConnection()) {
+            String sql = """
+                    DELETE FROM products WHERE id IN (
+                        SELECT id FROM products
+                        WHERE deleted_at IS NOT NULL AND deleted_at < ?
+                        LIMIT ?
+                    )
+                    """;
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                ps.setLong(1, cutoff);
+                ps.setInt(2, chunkSize);
+
+                int rows;
+                do {
+                    // Autocommit: each chunk is its own short transaction
+                    rows = ps.executeUpdate();
+                    totalRows += rows;
+                    if (rows == chunkSize && chunkPauseMs > 0) {
+                        Thread.sleep(chunkPauseMs);
+                    }
+                } while (rows == chunkSize);
+            }
+
+            // Each purged row logged a stock change; drop what no alert engine still needs
+            LowStockAlertEngine.trimChanges(conn);
+
+            long before = pragmaLong(conn, "freelist_count");
+            long after = before;
+            try (Statement stmt = conn.createStatement()) {
+                // The JDBC driver steps the pragma only once per call, freeing a single page
+                long previous;
+                do {
+                    previous = after;
+                    stmt.execute("PRAGMA incremental_vacuum");
+                    after = pragmaLong(conn, "freelist_count");
+                } while (after > 0 && after < previous);
+            }
+            long pageSize = pragmaLong(conn, "page_size");
+
+            return new PurgeReport(totalRows, before - after, (before - after) * pageSize);
+        }
+    }
+
+    boolean isOffPeak(LocalTime now) {
+        if (offPeakStart.equals(offPeakEnd)) return true;
+        if (offPeakStart.isBefore(offPeakEnd)) {
+            return !now.isBefore(offPeakStart) && now.isBefore(offPeakEnd);
+        }
+        return !now.isBefore(offPeakStart) || now.isBefore(offPeakEnd);
+    }
+
+    private static long pragmaLong(Connection conn, String pragma) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA " + pragma)) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    /** Outcome of a single purge run. */
+    public static class PurgeReport {
+        public final int rowsPurged;
+        public final long pagesReclaimed;
+        public final long bytesReclaimed;
+
+        PurgeReport(int rowsPurged, long pagesReclaimed, long bytesReclaimed) {
+            this.rowsPurged = rowsPurged;
+            this.pagesReclaimed = pagesReclaimed;
+            this.bytesReclaimed = bytesReclaimed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("PurgeReport [Rows=%d, PagesReclaimed=%d, BytesReclaimed=%d]",
+                    rowsPurged, pagesReclaimed, bytesReclaimed);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Manual run: ignore the off-peak window and purge everything past retention
+        ProductPurgeJob job = new ProductPurgeJob();
+        System.out.println(job.purge());
+    }
+}
@@ -0,0 +1,105 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * ProductRangeBenchmark.java
+ * Created by Arvind Kumar S
+ * Compares ProductRepository range and top-K queries with and without the
+ * secondary indexes on a scratch database.
+ *
+ * Usage: java ProductRangeBenchmark [rows] [scratch-file]
+ * Defaults to 1,000,000 rows in bench_inventory.db, which is deleted first
+ * along with its -wal and -shm files.
+ */
+public class ProductRangeBenchmark {
+
+    private static final String[] CATEGORIES = {
+        "Electronics", "Grocery", "Clothing", "Books", "Toys", "Furniture", "Sports", "Beauty",
+        "Stationery", "Kitchen", "Garden", "Automotive", "Health", "Music", "Footwear", "Jewellery"
+    };
+    private static final int RUNS = 20;
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        File file = new File(args.length > 1 ? args[1] : "bench_inventory.db");
+        // The -wal and -shm left by an aborted run would be replayed into the fresh file
+        for (String suffix : new String[] {"", "-wal", "-shm"}) {
+            Files.deleteIfExists(new File(file.getPath() + suffix).toPath());
+        }
+
+        // Must be set before Database is first touched
+        System.setProperty("inventory.db", file.getPath());
+
+        try (Connection conn = Database.getConnection()) {
+            long start = System.nanoTime();
+            populate(conn, rows);
+            System.out.printf("Loaded %,d products in %.1f s%n", rows, (System.nanoTime() - start) / 1e9);
+
+            ProductRepository indexed = new ProductRepository(conn);
+            ProductRepository scan = new ProductRepository(conn, false);
+            ProductRepository.RangeQuery inCategory =
+                    new ProductRepository.RangeQuery("Electronics", 1000, 2000, 50);
+            ProductRepository.RangeQuery anyCategory =
+                    new ProductRepository.RangeQuery(null, 1000, 1100, Integer.MAX_VALUE);
+
+            System.out.printf("%-36s %12s %12s%n", "query", "indexed ms", "scan ms");
+            report("first page, category + price + qty", () -> indexed.findInPriceRange(inCategory, null, 50),
+                    () -> scan.findInPriceRange(inCategory, null, 50));
+            report("first page, price only", () -> indexed.findInPriceRange(anyCategory, null, 50),
+                    () -> scan.findInPriceRange(anyCategory, null, 50));
+            report("stream, price only", () -> indexed.streamInPriceRange(anyCategory, p -> { }),
+                    () -> scan.streamInPriceRange(anyCategory, p -> { }));
+            report("top 20 by price in category", () -> indexed.topByPrice("Books", 20),
+                    () -> scan.topByPrice("Books", 20));
+            report("top 20 by stock value", () -> indexed.topByStockValue(20),
+                    () -> scan.topByStockValue(20));
+        }
+    }
+
+    private static void populate(Connection conn, int rows) throws SQLException {
+        Random random = new Random(42);
+        conn.setAutoCommit(false);
+        String sql = "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            for (int i = 0; i < rows; i++) {
+                ps.setString(1, "Product " + i);
+                ps.setString(2, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+                ps.setDouble(3, Math.round(random.nextDouble() * 1_000_000) / 100.0);
+                ps.setInt(4, random.nextInt(500));
+                ps.setString(5, "");
+                ps.addBatch();
+                if (i % 10_000 == 9_999) ps.executeBatch();
+            }
+            ps.executeBatch();
+        }
+        conn.commit();
+        conn.setAutoCommit(true);
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("ANALYZE");
+        }
+    }
+
+    private static void report(String label, Query indexed, Query scan) throws SQLException {
+        System.out.printf("%-36s %12.3f %12.3f%n", label, time(indexed), time(scan));
+    }
+
+    /** Median of {@link #RUNS} timed runs after one warm-up, in milliseconds. */
+    private static double time(Query query) throws SQLException {
+        query.run();
+        long[] samples = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long start = System.nanoTime();
+            query.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        return samples[RUNS / 2] / 1e6;
+    }
+
+    private interface Query {
+        Object run() throws SQLException;
+    }
+}
@@ -0,0 +1,201 @@
+import com.ecommerce.model.Product;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * ProductRepository.java
+ * Created by Arvind Kumar S
+ * Typed read queries over live products: price/quantity ranges with keyset
+ * pagination, streaming, and top-K listings. Backed by the partial indexes
+ * created in {@link Database}.
+ */
+public class ProductRepository {
+
+    private static final int STREAM_FETCH_SIZE = 1000;
+
+    private final Connection conn;
+    private final String source;
+
+    /**
+     * @param conn open connection; the caller owns it and closes it
+     */
+    public ProductRepository(Connection conn) {
+        this(conn, true);
+    }
+
+    /** With {@code useIndexes == false} every query runs as a full table scan (benchmarking only). */
+    ProductRepository(Connection conn, boolean useIndexes) {
+        this.conn = conn;
+        this.source = useIndexes ? "products" : "products NOT INDEXED";
+    }
+
+    /**
+     * Returns one page of products matching the query, ordered by price then id.
+     *
+     * @param after cursor from the previous page, or {@code null} for the first page
+     */
+    public Page findInPriceRange(RangeQuery query, Cursor after, int pageSize) throws SQLException {
+        if (pageSize <= 0)
+            throw new IllegalArgumentException("Page size must be positive");
+
+        List<Product> products = new ArrayList<>(pageSize);
+        try (PreparedStatement ps = conn.prepareStatement(rangeSql(query, after != null) + " LIMIT ?")) {
+            int i = bindRange(ps, query);
+            if (after != null) {
+                ps.setDouble(i++, after.price);
+                ps.setInt(i++, after.id);
+            }
+            ps.setInt(i, pageSize);
+
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) products.add(toProduct(rs));
+            }
+        }
+
+        Cursor next = null;
+        if (products.size() == pageSize) {
+            Product last = products.get(products.size() - 1);
+            next = new Cursor(last.getPrice(), last.getId());
+        }
+        return new Page(products, next);
+    }
+
+    /**
+     * Feeds every matching product to {@code sink} in price order without holding
+     * the result set in memory.
+     *
+     * @return number of products streamed
+     */
+    public int streamInPriceRange(RangeQuery query, Consumer<Product> sink) throws SQLException {
+        int count = 0;
+        try (PreparedStatement ps = conn.prepareStatement(rangeSql(query, false))) {
+            bindRange(ps, query);
+            ps.setFetchSize(STREAM_FETCH_SIZE);
+            try (ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    sink.accept(toProduct(rs));
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The {@code k} most expensive products, optionally within one category.
+     */
+    public List<Product> topByPrice(String category, int k) throws SQLException {
+        String sql = "SELECT * FROM " + source + " WHERE deleted_at IS NULL"
+                + (category != null ? " AND category = ?" : "")
+                + " ORDER BY price DESC LIMIT ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            int i = 1;
+            if (category != null) ps.setString(i++, category);
+            ps.setInt(i, k);
+            return list(ps);
+        }
+    }
+
+    /**
+     * The {@code k} products tying up the most money in stock (price × quantity).
+     */
+    public List<Product> topByStockValue(int k) throws SQLException {
+        String sql = "SELECT * FROM " + source + " WHERE deleted_at IS NULL"
+                + " ORDER BY price * quantity DESC LIMIT ?";
+        try (PreparedStatement ps = conn.prepareStatement(sql)) {
+            ps.setInt(1, k);
+            return list(ps);
+        }
+    }
+
+    private String rangeSql(RangeQuery query, boolean keyset) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM ").append(source)
+                .append(" WHERE deleted_at IS NULL");
+        if (query.category != null) sql.append(" AND category = ?");
+        sql.append(" AND price BETWEEN ? AND ?");
+        if (query.maxQuantity != Integer.MAX_VALUE) sql.append(" AND quantity < ?");
+        if (keyset) sql.append(" AND (price, id) > (?, ?)");
+        sql.append(" ORDER BY price, id");
+        return sql.toString();
+    }
+
+    private static int bindRange(PreparedStatement ps, RangeQuery query) throws SQLException {
+        int i = 1;
+        if (query.category != null) ps.setString(i++, query.category);
+        ps.setDouble(i++, query.minPrice);
+        ps.setDouble(i++, query.maxPrice);
+        if (query.maxQuantity != Integer.MAX_VALUE) ps.setInt(i++, query.maxQuantity);
+        return i;
+    }
+
+    private static List<Product> list(PreparedStatement ps) throws SQLException {
+        List<Product> products = new ArrayList<>();
+        try (ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) products.add(toProduct(rs));
+        }
+        return products;
+    }
+
+    /** Maps the current row of a {@code SELECT * FROM products} result. */
+    static Product toProduct(ResultSet rs) throws SQLException {
+        return new Product(
+                rs.getInt("id"),
+                rs.getString("name"),
+                rs.getString("category"),
+                rs.getDouble("price"),
+                rs.getInt("quantity"),
+                rs.getString("description"));
+    }
+
+    /** Price range (inclusive), optional category and optional exclusive quantity bound. */
+    public static class RangeQuery {
+        final String category;
+        final double minPrice;
+        final double maxPrice;
+        final int maxQuantity;
+
+        /**
+         * @param category exact category, or {@code null} for all categories
+         * @param maxQuantity only products with quantity below this; {@code Integer.MAX_VALUE} for no bound
+         */
+        public RangeQuery(String category, double minPrice, double maxPrice, int maxQuantity) {
+            if (minPrice < 0 || maxPrice < minPrice)
+                throw new IllegalArgumentException("Invalid price range");
+            this.category = category;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.maxQuantity = maxQuantity;
+        }
+
+        public RangeQuery(double minPrice, double maxPrice) {
+            this(null, minPrice, maxPrice, Integer.MAX_VALUE);
+        }
+    }
+
+    /** Position after the last row of a page. */
+    public static class Cursor {
+        final double price;
+        final int id;
+
+        Cursor(double price, int id) {
+            this.price = price;
+            this.id = id;
+        }
+    }
+
+    /** One page of results plus the cursor for the next page ({@code null} on the last page). */
+    public static class Page {
+        public final List<Product> products;
+        public final Cursor next;
+
+        Page(List<Product> products, Cursor next) {
+            this.products = products;
+            this.next = next;
+        }
+
+        public boolean hasNext() { return next != null; }
+    }
+}
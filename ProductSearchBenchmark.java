@@ -0,0 +1,175 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ProductSearchBenchmark.java
+ * Created by Arvind Kumar S
+ * Builds a ProductSearchIndex over synthetic products (5,000 made-up brands,
+ * common adjectives and items, random SKU) and reports build time,
+ * memory per product and lookup latency for exact, partial, mid-word and
+ * misspelled queries. Fails fast if a mid-word substring or a short typo is not found.
+ *
+ * Usage: java -Xmx2g ProductSearchBenchmark [products]
+ */
+public class ProductSearchBenchmark {
+
+    private static final String[] SYLLABLES = {
+        "ka", "ri", "mo", "ven", "tal", "su", "ro", "mi", "dex", "na", "pol", "zen", "ha", "li",
+        "tor", "ba", "gi", "lux", "ne", "sha", "vi", "kor", "pa", "de"
+    };
+    private static final String[] ADJECTIVES = {
+        "Steel", "Compact", "Deluxe", "Portable", "Smart", "Classic", "Premium", "Mini", "Pro",
+        "Eco", "Heavy Duty", "Wireless", "Digital", "Cotton", "Ceramic", "Glass", "Wooden"
+    };
+    private static final String[] ITEMS = {
+        "Pressure Cooker", "Water Bottle", "Ceiling Fan", "Wrist Watch", "Bluetooth Speaker",
+        "Laptop Stand", "Mixer Grinder", "Steam Iron", "Hair Dryer", "Lunch Box", "Study Table",
+        "LED Bulb", "Power Bank", "Electric Kettle", "Non Stick Tawa", "Cricket Bat", "Yoga Mat"
+    };
+    private static final String[] CATEGORIES = {
+        "Electronics", "Kitchen", "Home", "Fashion", "Sports", "Beauty", "Stationery", "Grocery"
+    };
+    private static final int QUERIES = 2000;
+
+    public static void main(String[] args) {
+        checkMidWordSubstrings();
+        checkShortTypos();
+
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(7);
+        String[] brands = new String[5000];
+        for (int i = 0; i < brands.length; i++) brands[i] = brand(random);
+        String[] names = new String[products];
+
+        ProductSearchIndex index = new ProductSearchIndex();
+        long start = System.nanoTime();
+        for (int id = 1; id <= products; id++) {
+            String name = brands[random.nextInt(brands.length)] + " "
+                    + ADJECTIVES[random.nextInt(ADJECTIVES.length)] + " "
+                    + ITEMS[random.nextInt(ITEMS.length)] + " " + sku(random);
+            names[id - 1] = name;
+            index.add(id, name, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        }
+        System.out.printf("Indexed %,d products in %.1f s%n", products, (System.nanoTime() - start) / 1e9);
+        System.out.printf("Index size %.1f MB, %.1f bytes per product%n",
+                index.memoryBytes() / 1e6, index.bytesPerProduct());
+
+        System.out.printf("%-12s %10s %10s %10s %12s%n", "query", "p50 ms", "p99 ms", "max ms", "avg hits");
+        run(index, "exact", names, random, ProductSearchBenchmark::exact);
+        run(index, "partial", names, random, ProductSearchBenchmark::partial);
+        run(index, "mid-word", names, random, ProductSearchBenchmark::midWord);
+        run(index, "misspelled", names, random, ProductSearchBenchmark::misspelled);
+        run(index, "common word", names, random, (name, r) -> ITEMS[r.nextInt(ITEMS.length)].split(" ")[0]);
+    }
+
+    private static void run(ProductSearchIndex index, String label, String[] names, Random random, QueryMaker maker) {
+        // Warm-up
+        for (int i = 0; i < QUERIES; i++) {
+            index.search(maker.make(names[random.nextInt(names.length)], random), 10);
+        }
+
+        long[] samples = new long[QUERIES];
+        long hits = 0;
+        for (int i = 0; i < QUERIES; i++) {
+            String query = maker.make(names[random.nextInt(names.length)], random);
+            long start = System.nanoTime();
+            List<ProductSearchIndex.Hit> result = index.search(query, 10);
+            samples[i] = System.nanoTime() - start;
+            hits += result.size();
+        }
+        Arrays.sort(samples);
+        System.out.printf("%-12s %10.3f %10.3f %10.3f %12.1f%n", label,
+                samples[QUERIES / 2] / 1e6, samples[QUERIES * 99 / 100] / 1e6,
+                samples[QUERIES - 1] / 1e6, (double) hits / QUERIES);
+    }
+
+    private static String brand(Random random) {
+        StringBuilder brand = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) brand.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        return Character.toUpperCase(brand.charAt(0)) + brand.substring(1);
+    }
+
+    private static String sku(Random random) {
+        StringBuilder sku = new StringBuilder();
+        for (int i = 0; i < 2; i++) sku.append((char) ('A' + random.nextInt(26)));
+        return sku.append(100 + random.nextInt(900)).toString();
+    }
+
+    private static String exact(String name, Random random) {
+        return name;
+    }
+
+    /** Brand plus the first few letters of the next word, as typed keystroke by keystroke. */
+    private static String partial(String name, Random random) {
+        String[] words = name.split(" ");
+        return words[0] + " " + words[1].substring(0, Math.min(4, words[1].length()));
+    }
+
+    /** Two to four characters from inside one word, as a user half-remembering a name types. */
+    private static String midWord(String name, Random random) {
+        String[] words = name.split(" ");
+        String word = words[random.nextInt(words.length)];
+        int length = Math.min(word.length() - 1, 2 + random.nextInt(3));
+        if (length < 1) return word;
+        int from = 1 + random.nextInt(word.length() - length);
+        return word.substring(from, from + length);
+    }
+
+    /**
+     * A query's trigrams must match without depending on a word boundary the
+     * text lacks, so these are found verbatim (distance 0).
+     */
+    private static void checkMidWordSubstrings() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.add(1, "Samsung Smartphone X", "Electronics");
+        index.add(2, "Milton Water Bottle", "Kitchen");
+        String[][] cases = {
+            {"hone", "1"}, {"one", "1"}, {"on", "1"}, {"ctro", "1"}, {"msu", "1"},
+            {"ottle", "2"}, {"tch", "2"}, {"ilt", "2"}, {"o", "1"}
+        };
+        for (String[] c : cases) {
+            List<ProductSearchIndex.Hit> hits = index.search(c[0], 10);
+            boolean found = false;
+            for (ProductSearchIndex.Hit hit : hits) {
+                found |= hit.productId == Integer.parseInt(c[1]) && hit.distance == 0;
+            }
+            if (!found)
+                throw new IllegalStateException("\"" + c[0] + "\" did not find product " + c[1]);
+        }
+        System.out.println("Mid-word substring check passed (" + cases.length + " queries)");
+    }
+
+    /**
+     * Typos that leave a short query no trigram in common with the product, and
+     * swapped letters, which count as one edit.
+     */
+    private static void checkShortTypos() {
+        ProductSearchIndex index = new ProductSearchIndex();
+        index.add(1, "Wireless Mouse", "Electronics");
+        index.add(2, "Cricket Bat", "Sports");
+        index.add(3, "Desk Lamp", "Home");
+        String[][] cases = {
+            {"moose", "1"}, {"mose", "1"}, {"muose", "1"}, {"crikcet", "2"}, {"crciket", "2"}, {"lamo", "3"}, {"lmap", "3"}
+        };
+        for (String[] c : cases) {
+            List<ProductSearchIndex.Hit> hits = index.search(c[0], 10);
+            if (hits.isEmpty() || hits.get(0).productId != Integer.parseInt(c[1]) || hits.get(0).distance != 1)
+                throw new IllegalStateException("\"" + c[0] + "\" did not find product " + c[1] + " one edit away");
+        }
+        System.out.println("Short typo check passed (" + cases.length + " queries)");
+    }
+
+    /** Whole name with one character replaced. */
+    private static String misspelled(String name, Random random) {
+        char[] chars = name.toCharArray();
+        int at = random.nextInt(chars.length);
+        chars[at] = (char) ('a' + random.nextInt(26));
+        return new String(chars);
+    }
+
+    private interface QueryMaker {
+        String make(String name, Random random);
+    }
+}
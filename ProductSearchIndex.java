@@ -0,0 +1,780 @@
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+
+/**
+ * ProductSearchIndex.java
+ * Created by Arvind Kumar S
+ * In-memory trigram index over product name and category for typo-tolerant
+ * lookups. Postings are plain int arrays keyed by an open-addressing table of
+ * packed trigrams, so nothing per posting is boxed.
+ *
+ * Lookups count shared trigrams per product, verify the best candidates with
+ * an edit distance that lets the query match anywhere in the text, and return
+ * the top K. Writes made through this process are applied immediately; writes
+ * from other processes (each form runs as its own program) reach the shared
+ * index through the stock_changes log, read on every {@link #shared()} call
+ * under its own stock_consumers claim, like LowStockAlertEngine.
+ */
+public class ProductSearchIndex {
+
+    // Consecutive query windows one edit can destroy: a swap of two adjacent letters touches 4
+    private static final int TRIGRAMS_PER_EDIT = 4;
+
+    // Postings the verbatim pass may walk before the full lookup takes over
+    private static final int VERBATIM_BUDGET = 2048;
+
+    private static final int CATCH_UP_BATCH = 1000;
+    // The claim is written back at most this often, so a search is normally read-only
+    private static final long CLAIM_RENEW_MS = 60_000;
+
+    private static ProductSearchIndex shared;
+
+    // Position in stock_changes, once rebuild() has claimed one
+    private final String consumerId = UUID.randomUUID().toString();
+    private long lastSeq = -1;
+    private long claimRenewedAt;
+    // Kept open so a search that finds nothing new costs one indexed read, not a connection
+    private Connection changeLog;
+
+    // Per-document storage, addressed by slot (insertion order)
+    private int size;
+    private int[] productIds = new int[1024];
+    private String[] texts = new String[1024];
+    private final BitSet deleted = new BitSet();
+    private int deletedCount;
+
+    // Product id -> slot + 1 (0 = not indexed)
+    private int[] slotById = new int[1024];
+
+    // Trigram -> posting list of slots, ascending
+    private long[] keys = new long[1 << 12];
+    private int[][] postings = new int[1 << 12][];
+    private int[] lengths = new int[1 << 12];
+    private int trigramCount;
+    // Every character in some trigram, tried as the replacement in one-edit variants
+    private final BitSet alphabet = new BitSet();
+
+    // Query scratch space, reused between lookups
+    private byte[] counts = new byte[1024]; // shared windows, at most 64
+    private int[] touched = new int[1024];
+    private int[] marked = new int[1024]; // candidates outside counting, -1 in counts
+    private int markedCount;
+    private int[] distanceColumn = new int[64];
+    private int[] distancePrevious = new int[64];
+    private int[] distanceBeforeThat = new int[64];
+
+    /**
+     * The process-wide index over inventory.db, built on first use and brought up
+     * to date with other processes' writes on every call.
+     */
+    public static synchronized ProductSearchIndex shared() throws SQLException {
+        if (shared == null) {
+            ProductSearchIndex index = new ProductSearchIndex();
+            index.rebuild();
+            shared = index;
+        } else {
+            shared.catchUp();
+        }
+        return shared;
+    }
+
+    /**
+     * Shows an insert or restore in this process's index at once; no-op until it is
+     * built. Indexes in other processes pick the write up from stock_changes.
+     */
+    public static synchronized void productAdded(int productId, String name, String category) {
+        if (shared != null) shared.add(productId, name, category);
+    }
+
+    /** Same as {@link #productAdded} for a delete or archive. */
+    public static synchronized void productRemoved(int productId) {
+        if (shared != null) shared.remove(productId);
+    }
+
+    /**
+     * Reloads every live product from inventory.db and claims a position in
+     * stock_changes, so {@link #catchUp()} can follow later writes.
+     */
+    public synchronized void rebuild() throws SQLException {
+        clear();
+        try (Connection conn = Database.getConnection()) {
+            // Claimed before loading: changes in between are replayed, which is harmless
+            lastSeq = LowStockAlertEngine.claimChanges(conn, consumerId);
+            claimRenewedAt = System.currentTimeMillis();
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(
+                         "SELECT id, name, category FROM products WHERE deleted_at IS NULL ORDER BY id")) {
+                while (rs.next()) {
+                    add(rs.getInt("id"), rs.getString("name"), rs.getString("category"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies inserts, deletes, restores and archiving logged in stock_changes
+     * since the last call, from any process. Each change is resolved against the
+     * current row, so replaying one this process already applied is a no-op.
+     */
+    public synchronized void catchUp() throws SQLException {
+        if (lastSeq < 0) return;
+        if (changeLog == null || changeLog.isClosed()) changeLog = Database.getConnection();
+        try {
+            Connection conn = changeLog;
+            long now = System.currentTimeMillis();
+            if (now - claimRenewedAt > CLAIM_RENEW_MS) {
+                if (!LowStockAlertEngine.renewClaim(conn, consumerId, lastSeq)) {
+                    // Lease expired, so changes past lastSeq may already be trimmed
+                    rebuild();
+                    return;
+                }
+                claimRenewedAt = now;
+            }
+
+            String sql = "SELECT c.seq, c.product_id, p.name, p.category, p.deleted_at "
+                    + "FROM stock_changes c LEFT JOIN products p ON p.id = c.product_id "
+                    + "WHERE c.seq > ? ORDER BY c.seq LIMIT ?";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                int rows;
+                do {
+                    rows = 0;
+                    ps.setLong(1, lastSeq);
+                    ps.setInt(2, CATCH_UP_BATCH);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            lastSeq = rs.getLong("seq");
+                            int productId = rs.getInt("product_id");
+                            String name = rs.getString("name");
+                            if (name == null || rs.getObject("deleted_at") != null) {
+                                remove(productId);
+                            } else {
+                                refresh(productId, name, rs.getString("category"));
+                            }
+                            rows++;
+                        }
+                    }
+                } while (rows == CATCH_UP_BATCH);
+            }
+        } catch (SQLException ex) {
+            changeLog.close();
+            changeLog = null;
+            throw ex;
+        }
+    }
+
+    /** Adds a product, or re-indexes it only if its text changed. */
+    private void refresh(int productId, String name, String category) {
+        int slot = productId < slotById.length ? slotById[productId] - 1 : -1;
+        if (slot >= 0 && texts[slot].equals(normalize(name + " " + (category != null ? category : "")))) return;
+        add(productId, name, category);
+    }
+
+    public synchronized void add(int productId, String name, String category) {
+        if (productId < 0)
+            throw new IllegalArgumentException("Product id cannot be negative");
+        remove(productId);
+
+        String text = normalize(name + " " + (category != null ? category : ""));
+        int slot = size++;
+        if (slot == productIds.length) {
+            productIds = Arrays.copyOf(productIds, slot * 2);
+            texts = Arrays.copyOf(texts, slot * 2);
+        }
+        productIds[slot] = productId;
+        texts[slot] = text;
+        if (productId >= slotById.length) {
+            slotById = Arrays.copyOf(slotById, Math.max(productId + 1, slotById.length * 2));
+        }
+        slotById[productId] = slot + 1;
+
+        for (long gram : trigrams(" " + text + " ")) {
+            append(gram, slot);
+        }
+    }
+
+    public synchronized void remove(int productId) {
+        if (productId >= slotById.length || slotById[productId] == 0) return;
+        deleted.set(slotById[productId] - 1);
+        deletedCount++;
+        slotById[productId] = 0;
+
+        // Postings only ever grow; rebuild them once most entries are dead
+        if (deletedCount > 1024 && deletedCount > size / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Returns up to {@code k} products whose name or category contains the query,
+     * allowing one typo for 4-10 characters and two beyond that. A typo is a
+     * missing, extra or wrong character, or two adjacent characters swapped.
+     */
+    public synchronized List<Hit> search(String query, int k) {
+        String q = normalize(query);
+        if (q.isEmpty() || k <= 0) return new ArrayList<>();
+
+        // No word-boundary pad on the query, so it can match from the middle of a word
+        int[] windows = windowLists(q);
+        if (windows.length == 0) return scanMatches(q, k);
+        int w = windows.length;
+        int maxEdits = q.length() <= 3 ? 0 : q.length() <= 10 ? 1 : 2;
+
+        // Window positions, rarest posting list first (absent trigrams are empty lists)
+        long[] keyed = new long[w];
+        for (int i = 0; i < w; i++) keyed[i] = (long) lengths[windows[i]] << 6 | i;
+        Arrays.sort(keyed);
+        int[] byRarity = new int[w];
+        for (int i = 0; i < w; i++) byRarity[i] = (int) (keyed[i] & 63);
+
+        // Products containing the query verbatim rank first; k of them settle the lookup
+        List<Hit> exact = verbatimMatches(q, windows, byRarity, k);
+        if (exact.size() >= k) return exact;
+
+        if (counts.length < size) {
+            counts = new byte[productIds.length];
+            touched = new int[productIds.length];
+        }
+
+        // The windows a text lacks must lie within maxEdits runs of TRIGRAMS_PER_EDIT
+        // consecutive ones, and one run holds at most one of a chain of windows spaced
+        // that far apart: a match has all but maxEdits of the chain. The rarest chain
+        // of maxEdits + 3 (fewer, down to maxEdits + 1, when the query is too short)
+        // is counted, and other windows are probed for products that pass, until
+        // their missing ones spread too far. Queries of 4-6 characters have no chain
+        // and can lose every window to one edit: all their lists are counted, and
+        // products sharing none are found through those edits instead.
+        long chain = 0;
+        for (int picks = maxEdits + 3; chain == 0 && picks > maxEdits; picks--) {
+            chain = rareChain(windows, picks);
+        }
+        boolean tooShort = chain == 0;
+        if (tooShort) chain = (1L << w) - 1;
+        // A product usually lacks the chain windows it was not found through, and
+        // misses next to those cost no further edit, so only the far windows are
+        // probed; the rest would cost more than verifying the survivors
+        long near = 0;
+        long run = (1L << (2 * TRIGRAMS_PER_EDIT - 1)) - 1;
+        for (long c = chain; c != 0; c &= c - 1) {
+            int from = Long.numberOfTrailingZeros(c) - (TRIGRAMS_PER_EDIT - 1);
+            near |= from >= 0 ? run << from : run >>> -from;
+        }
+        int counted = Long.bitCount(chain);
+        int far = counted + Long.bitCount(~near & (w == 64 ? -1L : (1L << w) - 1));
+        int[][] lists = new int[w][];
+        int[] listLengths = new int[w];
+        long[] bits = new long[w];
+        for (int i = 0, c = 0, f = counted, r = far; i < w; i++) {
+            int pos = byRarity[i];
+            long bit = 1L << pos;
+            int at = (chain & bit) != 0 ? c++ : (near & bit) == 0 ? f++ : r++;
+            lists[at] = postings[windows[pos]];
+            listLengths[at] = lengths[windows[pos]];
+            bits[at] = bit;
+        }
+
+        // counts holds which chain windows each product has, then its shared windows.
+        // A match lacks at most maxEdits of the chain, so it is in one of the first
+        // maxEdits + 1 lists; the longer ones only mark products already found.
+        int touchedCount = 0;
+        for (int j = 0; j < counted; j++) {
+            int[] list = lists[j];
+            boolean admit = j <= maxEdits || tooShort;
+            for (int i = 0, n = listLengths[j]; i < n; i++) {
+                int slot = list[i];
+                if (counts[slot] == 0) {
+                    if (!admit) continue;
+                    touched[touchedCount++] = slot;
+                }
+                counts[slot] |= 1 << j;
+            }
+        }
+        int candidates = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            long missing = 0;
+            for (int j = 0; j < counted; j++) {
+                if ((counts[slot] & 1 << j) == 0) missing |= bits[j];
+            }
+            counts[slot] = 0;
+            if (deleted.get(slot)) continue;
+            for (int j = counted; j < far && coverable(missing, maxEdits); j++) {
+                if (listLengths[j] == 0 || Arrays.binarySearch(lists[j], 0, listLengths[j], slot) < 0) {
+                    missing |= bits[j];
+                }
+            }
+            if (!coverable(missing, maxEdits)) continue;
+            counts[slot] = (byte) (w - Long.bitCount(missing));
+            touched[candidates++] = slot;
+        }
+        touchedCount = candidates;
+
+        markedCount = 0;
+        if (tooShort) markSharingNoTrigram(q);
+
+        // Bucket candidates by shared window count
+        int[] bucketStart = new int[w + 2];
+        for (int i = 0; i < touchedCount; i++) bucketStart[w - counts[touched[i]] + 1]++;
+        for (int b = 1; b < bucketStart.length; b++) bucketStart[b] += bucketStart[b - 1];
+        int[] ordered = new int[touchedCount];
+        int[] fill = Arrays.copyOf(bucketStart, bucketStart.length);
+        for (int i = 0; i < touchedCount; i++) {
+            int slot = touched[i];
+            ordered[fill[w - counts[slot]]++] = slot;
+            counts[slot] = 0;
+        }
+
+        // Verify the candidates sharing the most windows first
+        long[] peq = new long[128];
+        for (int i = 0; i < q.length() && i < 64; i++) {
+            char c = q.charAt(i);
+            if (c < peq.length) peq[c] |= 1L << i;
+        }
+        PriorityQueue<Hit> best = new PriorityQueue<>(k + 1, (a, b) -> compare(b, a));
+        best.addAll(exact);
+        for (int b = 0; b < w; b++) {
+            int common = w - b;
+            for (int i = bucketStart[b]; i < bucketStart[b + 1]; i++) {
+                int slot = ordered[i];
+                int distance = distance(q, peq, texts[slot], maxEdits);
+                if (distance > maxEdits || distance == 0 && contains(exact, productIds[slot])) continue;
+                best.add(new Hit(productIds[slot], distance, common, texts[slot].length()));
+                if (best.size() > k) best.poll();
+                // k exact matches in the best remaining bucket cannot be beaten on distance
+                if (best.size() == k && best.peek().distance == 0) break;
+            }
+            if (best.size() >= k) break;
+        }
+
+        // Sharing no window ranks below every candidate above at the same distance
+        for (int i = 0; i < markedCount; i++) {
+            int slot = marked[i];
+            counts[slot] = 0;
+            if (best.size() >= k) continue;
+            int distance = distance(q, peq, texts[slot], maxEdits);
+            if (distance <= maxEdits) best.add(new Hit(productIds[slot], distance, 0, texts[slot].length()));
+        }
+
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(ProductSearchIndex::compare);
+        return hits;
+    }
+
+    private static boolean contains(List<Hit> hits, int productId) {
+        for (Hit hit : hits) {
+            if (hit.productId == productId) return true;
+        }
+        return false;
+    }
+
+    /** Whether {@code edits} runs of TRIGRAMS_PER_EDIT consecutive windows can cover every set bit. */
+    private static boolean coverable(long windows, int edits) {
+        for (int e = 0; e < edits && windows != 0; e++) {
+            windows &= ~(((1L << TRIGRAMS_PER_EDIT) - 1) << Long.numberOfTrailingZeros(windows));
+        }
+        return windows == 0;
+    }
+
+    /**
+     * The {@code picks} window positions, each at least TRIGRAMS_PER_EDIT after
+     * the last, whose posting lists are shortest in total, as a bit set; 0 when
+     * the query is too short for them.
+     */
+    private long rareChain(int[] windows, int picks) {
+        int w = windows.length;
+        if (w < (picks - 1) * TRIGRAMS_PER_EDIT + 1) return 0;
+
+        // cost[j][i]: fewest postings of j windows so spaced at position i or later
+        int gap = TRIGRAMS_PER_EDIT;
+        long[][] cost = new long[picks + 1][w + gap];
+        for (int j = 1; j <= picks; j++) {
+            for (int i = w; i < w + gap; i++) cost[j][i] = Long.MAX_VALUE / 2;
+            for (int i = w - 1; i >= 0; i--) {
+                cost[j][i] = Math.min(cost[j][i + 1], lengths[windows[i]] + cost[j - 1][i + gap]);
+            }
+        }
+        long chain = 0;
+        int i = 0;
+        for (int j = picks; j > 0; j--) {
+            while (cost[j][i] != lengths[windows[i]] + cost[j - 1][i + gap]) i++;
+            chain |= 1L << i;
+            i += gap;
+        }
+        return chain;
+    }
+
+    /**
+     * Products containing the query verbatim, found by walking the rarest window's
+     * posting list and probing the others. Stops at the first {@code k} (in id
+     * order), at the end of that list or after {@link #VERBATIM_BUDGET} postings;
+     * the full lookup keeps whatever was found rather than verifying it again.
+     */
+    private List<Hit> verbatimMatches(String q, int[] windows, int[] byRarity, int k) {
+        List<Hit> hits = new ArrayList<>();
+        int first = windows[byRarity[0]];
+        int limit = Math.min(lengths[first], VERBATIM_BUDGET);
+        for (int i = 0; i < limit && hits.size() < k; i++) {
+            int slot = postings[first][i];
+            if (deleted.get(slot)) continue;
+            boolean all = true;
+            for (int j = 1; j < windows.length && all; j++) {
+                int idx = windows[byRarity[j]];
+                all = lengths[idx] > 0 && Arrays.binarySearch(postings[idx], 0, lengths[idx], slot) >= 0;
+            }
+            if (all && texts[slot].contains(q)) {
+                hits.add(new Hit(productIds[slot], 0, windows.length, texts[slot].length()));
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Hash table slot of each 3-character window of {@code q}, by position; at most
+     * 64, so a set of windows fits in a long.
+     */
+    private int[] windowLists(String q) {
+        int[] windows = new int[Math.min(64, Math.max(0, q.length() - 2))];
+        for (int i = 0; i < windows.length; i++) {
+            windows[i] = find(((long) q.charAt(i) << 32) | ((long) q.charAt(i + 1) << 16) | q.charAt(i + 2));
+        }
+        return windows;
+    }
+
+    /**
+     * Marks every product with all the given posting lists (hash table slots),
+     * walking the shortest and probing the rest, unless it is already marked or
+     * counted.
+     */
+    private void markContaining(int[] lists) {
+        if (lists.length == 0) return;
+        int first = lists[0];
+        for (int idx : lists) {
+            if (lengths[idx] < lengths[first]) first = idx;
+        }
+        for (int i = 0, len = lengths[first]; i < len; i++) {
+            int slot = postings[first][i];
+            if (counts[slot] != 0 || deleted.get(slot)) continue;
+            boolean all = true;
+            for (int g = 0; g < lists.length && all; g++) {
+                int idx = lists[g];
+                all = idx == first || Arrays.binarySearch(postings[idx], 0, lengths[idx], slot) >= 0;
+            }
+            if (!all) continue;
+            counts[slot] = -1;
+            if (markedCount == marked.length) marked = Arrays.copyOf(marked, markedCount * 2);
+            marked[markedCount++] = slot;
+        }
+    }
+
+    /**
+     * Marks the products within one edit of {@code q} that share none of its
+     * trigrams. Such an edit touches every
+     * 3-character window of the query, so there are only a few dozen of them;
+     * each is applied to the query and the result looked up verbatim.
+     */
+    private void markSharingNoTrigram(String q) {
+        int n = q.length();
+        List<String> variants = new ArrayList<>();
+        for (int p = Math.max(0, n - 3); p <= 2 && p < n; p++) {
+            variants.add(q.substring(0, p) + q.substring(p + 1));
+            for (int c = alphabet.nextSetBit(0); c >= 0; c = alphabet.nextSetBit(c + 1)) {
+                if (c != q.charAt(p)) variants.add(q.substring(0, p) + (char) c + q.substring(p + 1));
+            }
+        }
+        for (int p = Math.max(0, n - 4); p <= 2 && p + 1 < n; p++) {
+            if (q.charAt(p) == q.charAt(p + 1)) continue;
+            variants.add(q.substring(0, p) + q.charAt(p + 1) + q.charAt(p) + q.substring(p + 2));
+        }
+        for (int p = Math.max(1, n - 2); p <= 2 && p < n; p++) {
+            for (int c = alphabet.nextSetBit(0); c >= 0; c = alphabet.nextSetBit(c + 1)) {
+                variants.add(q.substring(0, p) + (char) c + q.substring(p));
+            }
+        }
+
+        for (String variant : variants) {
+            long[] grams = trigrams(variant);
+            int[] lists = new int[grams.length];
+            for (int g = 0; g < grams.length; g++) lists[g] = find(grams[g]);
+            markContaining(lists);
+        }
+    }
+
+    /**
+     * One or two characters have no trigram to look up, so the first keystrokes
+     * walk the products in slot order and stop at {@code k} containing them.
+     */
+    private List<Hit> scanMatches(String q, int k) {
+        List<Hit> hits = new ArrayList<>(k);
+        for (int slot = 0; slot < size && hits.size() < k; slot++) {
+            if (texts[slot] == null || deleted.get(slot)) continue;
+            if (texts[slot].contains(q)) hits.add(new Hit(productIds[slot], 0, 0, texts[slot].length()));
+        }
+        return hits;
+    }
+
+    /** Number of live indexed products. */
+    public synchronized int size() {
+        return size - deletedCount;
+    }
+
+    /**
+     * Approximate heap footprint of the index in bytes (64-bit JVM, compressed oops).
+     */
+    public synchronized long memoryBytes() {
+        long bytes = 16L + 4L * productIds.length       // productIds
+                + 16L + 4L * texts.length                // texts references
+                + 16L + 4L * slotById.length             // slotById
+                + 16L + 8L * keys.length                 // keys
+                + 16L + 4L * postings.length             // postings references
+                + 16L + 4L * lengths.length              // lengths
+                + (deleted.size() >> 3);
+        for (int i = 0; i < size; i++) {
+            if (texts[i] != null) bytes += 24 + 16 + texts[i].length(); // String + Latin-1 byte[]
+        }
+        for (int[] list : postings) {
+            if (list != null) bytes += 16 + 4L * list.length;
+        }
+        return bytes;
+    }
+
+    public synchronized double bytesPerProduct() {
+        int live = size();
+        return live == 0 ? 0 : (double) memoryBytes() / live;
+    }
+
+    private void clear() {
+        size = 0;
+        deletedCount = 0;
+        deleted.clear();
+        Arrays.fill(slotById, 0);
+        Arrays.fill(keys, 0);
+        Arrays.fill(postings, null);
+        Arrays.fill(lengths, 0);
+        trigramCount = 0;
+        alphabet.clear();
+    }
+
+    private void compact() {
+        int[] oldIds = Arrays.copyOf(productIds, size);
+        String[] oldTexts = Arrays.copyOf(texts, size);
+        BitSet oldDeleted = (BitSet) deleted.clone();
+        int oldSize = size;
+        clear();
+        for (int slot = 0; slot < oldSize; slot++) {
+            if (oldDeleted.get(slot)) continue;
+            int newSlot = size++;
+            productIds[newSlot] = oldIds[slot];
+            texts[newSlot] = oldTexts[slot];
+            slotById[oldIds[slot]] = newSlot + 1;
+            for (long gram : trigrams(" " + oldTexts[slot] + " ")) {
+                append(gram, newSlot);
+            }
+        }
+        Arrays.fill(texts, size, texts.length, null);
+    }
+
+    private void append(long gram, int slot) {
+        int idx = find(gram);
+        if (keys[idx] == 0) {
+            keys[idx] = gram;
+            postings[idx] = new int[4];
+            alphabet.set((int) (gram >>> 32));
+            alphabet.set((int) (gram >>> 16) & 0xFFFF);
+            alphabet.set((int) gram & 0xFFFF);
+            if (++trigramCount * 2 > keys.length) {
+                resize();
+                idx = find(gram);
+            }
+        }
+        int n = lengths[idx];
+        int[] list = postings[idx];
+        if (n > 0 && list[n - 1] == slot) return; // trigram repeated within one product
+        if (n == list.length) {
+            list = postings[idx] = Arrays.copyOf(list, n + (n >> 1) + 1);
+        }
+        list[n] = slot;
+        lengths[idx] = n + 1;
+    }
+
+    private int find(long gram) {
+        int mask = keys.length - 1;
+        int idx = (int) mix(gram) & mask;
+        while (keys[idx] != 0 && keys[idx] != gram) {
+            idx = (idx + 1) & mask;
+        }
+        return idx;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[][] oldPostings = postings;
+        int[] oldLengths = lengths;
+        keys = new long[oldKeys.length * 2];
+        postings = new int[oldKeys.length * 2][];
+        lengths = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0) continue;
+            int idx = find(oldKeys[i]);
+            keys[idx] = oldKeys[i];
+            postings[idx] = oldPostings[i];
+            lengths[idx] = oldLengths[i];
+        }
+    }
+
+    private static long mix(long x) {
+        x *= 0x9E3779B97F4A7C15L;
+        return x ^ (x >>> 29);
+    }
+
+    /**
+     * Distinct trigrams of {@code s}, each packed as three 16-bit chars. Never 0,
+     * because normalized text contains no NUL characters.
+     */
+    static long[] trigrams(String s) {
+        int n = Math.max(0, s.length() - 2);
+        long[] grams = new long[n];
+        for (int i = 0; i < n; i++) {
+            grams[i] = ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || grams[unique - 1] != grams[i]) grams[unique++] = grams[i];
+        }
+        return Arrays.copyOf(grams, unique);
+    }
+
+    /** Lower-case, every run of non-alphanumerics collapsed to one space, trimmed. */
+    static String normalize(String s) {
+        StringBuilder out = new StringBuilder(s.length());
+        boolean space = true;
+        for (int i = 0; i < s.length(); i++) {
+            char c = Character.toLowerCase(s.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                out.append(c);
+                space = false;
+            } else if (!space) {
+                out.append(' ');
+                space = true;
+            }
+        }
+        int len = out.length();
+        if (len > 0 && out.charAt(len - 1) == ' ') out.setLength(len - 1);
+        return out.toString();
+    }
+
+    /**
+     * Fewest edits turning {@code pattern} into some substring of {@code text},
+     * capped at {@code limit + 1}, where swapping two adjacent characters is one
+     * edit (optimal string alignment). Patterns up to 64 chars use Myers'
+     * bit-parallel algorithm with Hyyro's transposition term (one pass of word
+     * operations per text char); longer ones fall back to the plain dynamic programme.
+     */
+    private int distance(String pattern, long[] peq, String text, int limit) {
+        int m = pattern.length();
+        if (m > 64) return distanceDp(pattern, text, limit);
+
+        long high = 1L << (m - 1);
+        long pv = -1L;
+        long mv = 0L;
+        long d0 = 0L;
+        long previousEq = 0L;
+        int score = m;
+        int best = m;
+        for (int j = 0; j < text.length(); j++) {
+            char c = text.charAt(j);
+            long eq = c < peq.length ? peq[c] : equalityMask(pattern, c);
+            // Diagonal zero two steps back where pattern and text hold the same pair swapped
+            long swapped = (((~d0) & eq) << 1) & previousEq;
+            d0 = (((eq & pv) + pv) ^ pv) | eq | mv | swapped;
+            long ph = mv | ~(d0 | pv);
+            long mh = pv & d0;
+            if ((ph & high) != 0) score++;
+            else if ((mh & high) != 0) score--;
+            // No carry-in on ph: the match may start anywhere in the text
+            ph <<= 1;
+            mh <<= 1;
+            pv = mh | ~(d0 | ph);
+            mv = ph & d0;
+            previousEq = eq;
+            if (score < best) {
+                best = score;
+                if (best == 0) return 0;
+            }
+        }
+        return Math.min(best, limit + 1);
+    }
+
+    private int distanceDp(String pattern, String text, int limit) {
+        int m = pattern.length();
+        if (distanceColumn.length <= m) {
+            distanceColumn = new int[m + 1];
+            distancePrevious = new int[m + 1];
+            distanceBeforeThat = new int[m + 1];
+        }
+        int[] col = distanceColumn;
+        int[] previous = distancePrevious;
+        int[] beforeThat = distanceBeforeThat;
+        for (int i = 0; i <= m; i++) col[i] = i;
+
+        int best = col[m];
+        for (int j = 0; j < text.length(); j++) {
+            int[] rotate = beforeThat;
+            beforeThat = previous;
+            previous = col;
+            col = rotate;
+            char c = text.charAt(j);
+            col[0] = 0; // row 0 is free: the match may start anywhere
+            for (int i = 1; i <= m; i++) {
+                int cost = pattern.charAt(i - 1) == c ? 0 : 1;
+                int value = Math.min(Math.min(previous[i] + 1, col[i - 1] + 1), previous[i - 1] + cost);
+                if (i > 1 && j > 0 && pattern.charAt(i - 1) == text.charAt(j - 1)
+                        && pattern.charAt(i - 2) == c) {
+                    value = Math.min(value, beforeThat[i - 2] + 1);
+                }
+                col[i] = value;
+            }
+            best = Math.min(best, col[m]);
+            if (best == 0) break;
+        }
+        distanceColumn = col;
+        distancePrevious = previous;
+        distanceBeforeThat = beforeThat;
+        return Math.min(best, limit + 1);
+    }
+
+    /** Bit i set where {@code pattern.charAt(i) == c}; ASCII masks are precomputed per lookup. */
+    private static long equalityMask(String pattern, char c) {
+        long mask = 0;
+        for (int i = 0; i < pattern.length() && i < 64; i++) {
+            if (pattern.charAt(i) == c) mask |= 1L << i;
+        }
+        return mask;
+    }
+
+    private static int compare(Hit a, Hit b) {
+        if (a.distance != b.distance) return Integer.compare(a.distance, b.distance);
+        if (a.sharedTrigrams != b.sharedTrigrams) return Integer.compare(b.sharedTrigrams, a.sharedTrigrams);
+        if (a.textLength != b.textLength) return Integer.compare(a.textLength, b.textLength);
+        return Integer.compare(a.productId, b.productId);
+    }
+
+    /** One ranked lookup result. */
+    public static class Hit {
+        public final int productId;
+        public final int distance;
+        final int sharedTrigrams;
+        final int textLength;
+
+        Hit(int productId, int distance, int sharedTrigrams, int textLength) {
+            this.productId = productId;
+            this.distance = distance;
+            this.sharedTrigrams = sharedTrigrams;
+            this.textLength = textLength;
+        }
+    }
+}
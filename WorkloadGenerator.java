@@ -0,0 +1,651 @@
+import java.io.File;
+import java.nio.file.Files;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * WorkloadGenerator.java
+ * Created by Arvind Kumar S
+ * Drives the same database operations as the forms (add product, add buyer,
+ * keystroke search, single and bulk delete) against a scratch inventory.db and
+ * reports throughput, latency percentiles, SQLITE_BUSY retries and file growth.
+ *
+ * Usage: java WorkloadGenerator [key=value ...]
+ *   db=soak_inventory.db   scratch database (deleted first unless keep=true)
+ *   duration=60s           run length: 90s, 30m, 6h ...
+ *   threads=32             concurrent clients (virtual threads on JDK 21+)
+ *   mix=add:10,buyer:5,search:70,delete:10,bulk:5   (restore:N adds Undo clicks)
+ *   zipf=1.0               SKU popularity skew, 0 = uniform
+ *   seed=10000             products loaded before the run
+ *   bulk=20                products per bulk delete
+ *   think=0                pause per client between operations, ms
+ *   busy=0                 busy_timeout per connection, ms. At 0 every lock
+ *                          conflict surfaces as SQLITE_BUSY and is retried and
+ *                          counted here; -1 keeps the driver's 3 s wait, which
+ *                          hides contention inside latency and reports 0 retries
+ *   report=10s             interval between progress lines
+ *
+ * Deletes never take the catalog below its seeded size: when one would, the
+ * client first undoes earlier deletes (timed as restore), so a multi-hour soak
+ * keeps a steady working set. An operation that finds nothing to act on is
+ * counted as skipped rather than timed.
+ */
+public class WorkloadGenerator {
+
+    enum Op { ADD, BUYER, SEARCH, DELETE, BULK, RESTORE }
+
+    private static final int MAX_BUSY_RETRIES = 50;
+    private static final int SEARCH_LIMIT = 50;
+
+    private static final String[] SYLLABLES = {
+        "ka", "ri", "mo", "ven", "tal", "su", "ro", "mi", "dex", "na", "pol", "zen", "ha", "li",
+        "tor", "ba", "gi", "lux", "ne", "sha", "vi", "kor", "pa", "de"
+    };
+    private static final String[] ITEMS = {
+        "Pressure Cooker", "Water Bottle", "Ceiling Fan", "Wrist Watch", "Bluetooth Speaker",
+        "Laptop Stand", "Mixer Grinder", "Steam Iron", "Hair Dryer", "Lunch Box", "Study Table",
+        "LED Bulb", "Power Bank", "Electric Kettle", "Non Stick Tawa", "Cricket Bat", "Yoga Mat"
+    };
+    private static final String[] CATEGORIES = {
+        "Electronics", "Kitchen", "Home", "Fashion", "Sports", "Beauty", "Stationery", "Grocery"
+    };
+
+    private final Map<String, String> config;
+    private final File dbFile;
+    private final Op[] opTable;
+    private final double zipf;
+    private final int bulkSize;
+    private final long thinkMs;
+    private final int busyTimeoutMs;
+
+    private final SkuPool skus = new SkuPool();
+    private final Map<Op, Histogram> interval = new HashMap<>();
+    private final Map<Op, Histogram> total = new HashMap<>();
+    private final Histogram keystrokes = new Histogram();
+    private final LongAdder busyRetries = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private int catalogFloor;
+    private final LongAdder alerts = new LongAdder();
+
+    public WorkloadGenerator(Map<String, String> config) {
+        this.config = config;
+        this.dbFile = new File(config.getOrDefault("db", "soak_inventory.db"));
+        this.opTable = parseMix(config.getOrDefault("mix", "add:10,buyer:5,search:70,delete:10,bulk:5"));
+        this.zipf = Double.parseDouble(config.getOrDefault("zipf", "1.0"));
+        this.bulkSize = Integer.parseInt(config.getOrDefault("bulk", "20"));
+        this.thinkMs = Long.parseLong(config.getOrDefault("think", "0"));
+        this.busyTimeoutMs = Integer.parseInt(config.getOrDefault("busy", "0"));
+        for (Op op : Op.values()) {
+            interval.put(op, new Histogram());
+            total.put(op, new Histogram());
+        }
+    }
+
+    public void run() throws Exception {
+        int threads = Integer.parseInt(config.getOrDefault("threads", "32"));
+        long durationMs = parseDuration(config.getOrDefault("duration", "60s"));
+        long reportMs = parseDuration(config.getOrDefault("report", "10s"));
+        int seed = Integer.parseInt(config.getOrDefault("seed", "10000"));
+
+        if (!Boolean.parseBoolean(config.getOrDefault("keep", "false"))) {
+            for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                Files.deleteIfExists(new File(dbFile.getPath() + suffix).toPath());
+            }
+        }
+        // Must be set before Database is first touched
+        System.setProperty("inventory.db", dbFile.getPath());
+
+        seedProducts(seed);
+        catalogFloor = skus.size();
+        ProductSearchIndex.shared();
+        // Run the low-stock engine as the app does, counting alerts instead of writing a file
+        ScheduledExecutorService alertEngine = new LowStockAlertEngine(alert -> alerts.increment(), 5).start(10);
+
+        ExecutorService workers = newWorkerPool(threads);
+        System.out.printf("Workload: %d clients (%s), %s, mix=%s, zipf=%.2f, %,d seed products, db=%s%n",
+                threads, workers.getClass().getSimpleName(), config.getOrDefault("duration", "60s"),
+                config.getOrDefault("mix", "add:10,buyer:5,search:70,delete:10,bulk:5"), zipf, skus.size(), dbFile);
+
+        long start = System.currentTimeMillis();
+        long deadline = start + durationMs;
+        long startBytes = databaseBytes();
+        for (int i = 0; i < threads; i++) {
+            workers.execute(() -> client(deadline));
+        }
+        workers.shutdown();
+
+        long lastReport = start;
+        long lastBytes = startBytes;
+        while (!workers.awaitTermination(Math.min(reportMs, 1000), TimeUnit.MILLISECONDS)) {
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= reportMs) {
+                long bytes = databaseBytes();
+                printInterval(now - start, now - lastReport, bytes, bytes - lastBytes);
+                lastReport = now;
+                lastBytes = bytes;
+            }
+        }
+        // Measured while the engine still holds the file open, the same way as the start
+        long elapsed = System.currentTimeMillis() - start;
+        long endBytes = databaseBytes();
+        long endWalBytes = walBytes();
+        alertEngine.shutdownNow();
+        printSummary(elapsed, startBytes, endBytes, endWalBytes);
+    }
+
+    private void client(long deadline) {
+        while (System.currentTimeMillis() < deadline) {
+            Op op = opTable[ThreadLocalRandom.current().nextInt(opTable.length)];
+            try {
+                if (op == Op.DELETE) keepCatalog(1);
+                if (op == Op.BULK) keepCatalog(bulkSize);
+                long begin = System.nanoTime();
+                boolean done = switch (op) {
+                    case ADD -> addProduct();
+                    case BUYER -> addBuyer();
+                    case SEARCH -> search();
+                    case DELETE -> deleteProduct();
+                    case BULK -> bulkDelete();
+                    case RESTORE -> restoreProducts(1);
+                };
+                if (done) record(op, begin);
+                else skipped.increment();
+            } catch (SQLException | RuntimeException ex) {
+                failures.increment();
+                if (failures.sum() <= 10) System.err.println(op + " failed: " + ex);
+            }
+            if (thinkMs > 0) {
+                try {
+                    Thread.sleep(thinkMs);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void record(Op op, long beginNanos) {
+        long micros = (System.nanoTime() - beginNanos) / 1000;
+        interval.get(op).record(micros);
+        total.get(op).record(micros);
+    }
+
+    /** Undoes enough earlier deletes that removing {@code removing} more leaves the seeded catalog size. */
+    private void keepCatalog(int removing) throws SQLException {
+        int shortfall = catalogFloor - (skus.size() - removing);
+        if (shortfall <= 0) return;
+        long begin = System.nanoTime();
+        if (restoreProducts(shortfall)) record(Op.RESTORE, begin);
+    }
+
+    // ---- Operations, mirroring the SQL issued by the forms ----
+
+    /** AddProductForm.saveProduct() */
+    private boolean addProduct() throws SQLException {
+        String name = productName(ThreadLocalRandom.current());
+        String category = CATEGORIES[ThreadLocalRandom.current().nextInt(CATEGORIES.length)];
+        int id = withRetry(conn -> {
+            String sql = "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)";
+            PreparedStatement ps = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            ps.setString(1, name);
+            ps.setString(2, category);
+            ps.setDouble(3, ThreadLocalRandom.current().nextInt(100, 100_000) / 100.0);
+            ps.setInt(4, ThreadLocalRandom.current().nextInt(0, 200));
+            ps.setString(5, "Generated by WorkloadGenerator");
+            ps.executeUpdate();
+            ResultSet keys = ps.getGeneratedKeys();
+            return keys.next() ? keys.getInt(1) : -1;
+        });
+        if (id <= 0) return false;
+        ProductSearchIndex.productAdded(id, name, category);
+        skus.add(id, name);
+        return true;
+    }
+
+    /** AddBuyerForm.saveBuyer() */
+    private boolean addBuyer() throws SQLException {
+        int n = ThreadLocalRandom.current().nextInt(1_000_000);
+        return withRetry(conn -> {
+            String sql = "INSERT INTO buyers (name, email, phone, address) VALUES (?, ?, ?, ?)";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setString(1, "Buyer " + n);
+            ps.setString(2, "buyer" + n + "@example.com");
+            ps.setString(3, String.format("98%08d", n));
+            ps.setString(4, n + " MG Road, Chennai");
+            return ps.executeUpdate();
+        }) > 0;
+    }
+
+    /** DeleteProductForm.filterProducts(), once per keystroke while typing a popular SKU's name */
+    private boolean search() throws SQLException {
+        String name = skus.sampleName(zipf);
+        if (name == null) return false;
+        int typed = Math.min(name.length(), 2 + ThreadLocalRandom.current().nextInt(12));
+        for (int len = 1; len <= typed; len++) {
+            String prefix = name.substring(0, len);
+            long begin = System.nanoTime();
+            List<ProductSearchIndex.Hit> hits = ProductSearchIndex.shared().search(prefix, SEARCH_LIMIT);
+            if (!hits.isEmpty()) {
+                withRetry(conn -> {
+                    StringBuilder sql = new StringBuilder("SELECT * FROM products WHERE deleted_at IS NULL AND id IN (");
+                    for (int i = 0; i < hits.size(); i++) sql.append(i == 0 ? "?" : ", ?");
+                    sql.append(")");
+                    PreparedStatement ps = conn.prepareStatement(sql.toString());
+                    for (int i = 0; i < hits.size(); i++) ps.setInt(i + 1, hits.get(i).productId);
+                    int rows = 0;
+                    ResultSet rs = ps.executeQuery();
+                    while (rs.next()) rows++;
+                    return rows;
+                });
+            }
+            keystrokes.record((System.nanoTime() - begin) / 1000);
+        }
+        return true;
+    }
+
+    /** DeleteProductForm.deleteProduct() */
+    private boolean deleteProduct() throws SQLException {
+        int id = skus.takeId(zipf);
+        if (id < 0) return false;
+        withRetry(conn -> {
+            String sql = "UPDATE products SET deleted_at = ? WHERE id = ? AND deleted_at IS NULL";
+            PreparedStatement ps = conn.prepareStatement(sql);
+            ps.setLong(1, System.currentTimeMillis());
+            ps.setInt(2, id);
+            return ps.executeUpdate();
+        });
+        ProductSearchIndex.productRemoved(id);
+        return true;
+    }
+
+    /** Several deletes committed together, as a clerk clearing a discontinued range would */
+    private boolean bulkDelete() throws SQLException {
+        int[] ids = new int[bulkSize];
+        int n = 0;
+        while (n < bulkSize) {
+            int id = skus.takeId(zipf);
+            if (id < 0) break;
+            ids[n++] = id;
+        }
+        if (n == 0) return false;
+        int count = n;
+        withRetry(conn -> {
+            conn.setAutoCommit(false);
+            try {
+                PreparedStatement ps = conn.prepareStatement(
+                        "UPDATE products SET deleted_at = ? WHERE id = ? AND deleted_at IS NULL");
+                long now = System.currentTimeMillis();
+                for (int i = 0; i < count; i++) {
+                    ps.setLong(1, now);
+                    ps.setInt(2, ids[i]);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+                conn.commit();
+            } catch (SQLException ex) {
+                conn.rollback();
+                throw ex;
+            }
+            return count;
+        });
+        for (int i = 0; i < n; i++) ProductSearchIndex.productRemoved(ids[i]);
+        return true;
+    }
+
+    /** DeleteProductForm.restoreProduct(), the Undo offered after a delete, most recent first */
+    private boolean restoreProducts(int count) throws SQLException {
+        int[] ids = skus.dig(count);
+        if (ids.length == 0) return false;
+        List<String[]> restored = new ArrayList<>();
+        withRetry(conn -> {
+            restored.clear();
+            PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE products SET deleted_at = NULL WHERE id = ? AND deleted_at IS NOT NULL");
+            PreparedStatement row = conn.prepareStatement(
+                    "SELECT name, category FROM products WHERE id = ? AND deleted_at IS NULL");
+            for (int id : ids) {
+                ps.setInt(1, id);
+                ps.executeUpdate();
+                row.setInt(1, id);
+                ResultSet rs = row.executeQuery();
+                if (rs.next()) restored.add(new String[] {String.valueOf(id), rs.getString("name"), rs.getString("category")});
+            }
+            return restored.size();
+        });
+        for (String[] product : restored) {
+            int id = Integer.parseInt(product[0]);
+            ProductSearchIndex.productAdded(id, product[1], product[2]);
+            skus.add(id, product[1]);
+        }
+        return !restored.isEmpty();
+    }
+
+    // ---- Plumbing ----
+
+    private interface Work {
+        int run(Connection conn) throws SQLException;
+    }
+
+    /**
+     * Runs {@code work} on a fresh connection, as the forms do, retrying with
+     * backoff while SQLite reports SQLITE_BUSY.
+     */
+    private int withRetry(Work work) throws SQLException {
+        for (int attempt = 0; ; attempt++) {
+            try (Connection conn = Database.getConnection()) {
+                if (busyTimeoutMs >= 0) {
+                    try (Statement stmt = conn.createStatement()) {
+                        stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMs);
+                    }
+                }
+                return work.run(conn);
+            } catch (SQLException ex) {
+                if (!isBusy(ex) || attempt >= MAX_BUSY_RETRIES) throw ex;
+                busyRetries.increment();
+                try {
+                    Thread.sleep(Math.min(100, 1L << Math.min(attempt, 7)));
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    private static boolean isBusy(SQLException ex) {
+        String message = ex.getMessage();
+        return (ex.getErrorCode() & 0xFF) == 5
+                || (message != null && (message.contains("SQLITE_BUSY") || message.contains("database is locked")));
+    }
+
+    private void seedProducts(int count) throws SQLException {
+        Random random = new Random(42);
+        try (Connection conn = Database.getConnection()) {
+            conn.setAutoCommit(false);
+            String sql = "INSERT INTO products (name, category, price, quantity, description) VALUES (?, ?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(sql)) {
+                for (int i = 0; i < count; i++) {
+                    ps.setString(1, productName(random));
+                    ps.setString(2, CATEGORIES[random.nextInt(CATEGORIES.length)]);
+                    ps.setDouble(3, random.nextInt(100, 100_000) / 100.0);
+                    ps.setInt(4, random.nextInt(200));
+                    ps.setString(5, "Seed product");
+                    ps.addBatch();
+                    if (i % 10_000 == 9_999) ps.executeBatch();
+                }
+                ps.executeBatch();
+            }
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT id, name FROM products WHERE deleted_at IS NULL ORDER BY id")) {
+                while (rs.next()) skus.add(rs.getInt("id"), rs.getString("name"));
+            }
+        }
+    }
+
+    private static String productName(Random random) {
+        StringBuilder brand = new StringBuilder();
+        int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) brand.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        brand.setCharAt(0, Character.toUpperCase(brand.charAt(0)));
+        return brand + " " + ITEMS[random.nextInt(ITEMS.length)] + " "
+                + (char) ('A' + random.nextInt(26)) + (char) ('A' + random.nextInt(26)) + (100 + random.nextInt(900));
+    }
+
+    /**
+     * Logical database size, page_count * page_size. It counts pages still in
+     * the WAL, so it does not jump when a checkpoint moves them into the main
+     * file or when the last connection closing deletes the WAL.
+     */
+    private long databaseBytes() throws SQLException {
+        try (Connection conn = Database.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT page_count * page_size FROM pragma_page_count(), pragma_page_size()")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private long walBytes() {
+        return new File(dbFile.getPath() + "-wal").length();
+    }
+
+    private void printInterval(long elapsedMs, long intervalMs, long bytes, long growth) {
+        StringBuilder line = new StringBuilder(String.format("[%s] ", formatDuration(elapsedMs)));
+        long ops = 0;
+        for (Op op : Op.values()) {
+            Histogram h = interval.get(op);
+            long count = h.count();
+            ops += count;
+            if (count > 0) {
+                line.append(String.format("%s %d p50=%.1f p99=%.1f ms  ", op.name().toLowerCase(), count,
+                        h.percentile(0.50) / 1000.0, h.percentile(0.99) / 1000.0));
+            }
+            h.reset();
+        }
+        line.append(String.format("| %.0f ops/s, busy retries %d, failures %d, skipped %d, db %.1f MB (%+.1f MB), wal %.1f MB, alerts %d",
+                ops * 1000.0 / intervalMs, busyRetries.sum(), failures.sum(), skipped.sum(),
+                bytes / 1e6, growth / 1e6, walBytes() / 1e6, alerts.sum()));
+        System.out.println(line);
+    }
+
+    private void printSummary(long elapsedMs, long startBytes, long endBytes, long endWalBytes) {
+        System.out.printf("%nSummary after %s%n", formatDuration(elapsedMs));
+        System.out.printf("%-10s %10s %10s %10s %10s %10s %10s%n",
+                "op", "count", "ops/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+        long ops = 0;
+        for (Op op : Op.values()) {
+            Histogram h = total.get(op);
+            ops += h.count();
+            printRow(op.name().toLowerCase(), h, elapsedMs);
+        }
+        printRow("keystroke", keystrokes, elapsedMs);
+        System.out.printf("Throughput %.1f ops/s, SQLITE_BUSY retries %d, failed operations %d, skipped %d, alerts %d%n",
+                ops * 1000.0 / elapsedMs, busyRetries.sum(), failures.sum(), skipped.sum(), alerts.sum());
+        double hours = elapsedMs / 3_600_000.0;
+        System.out.printf("Database %.1f MB -> %.1f MB (%+.1f MB, %.1f MB/hour), wal %.1f MB, %,d live SKUs%n",
+                startBytes / 1e6, endBytes / 1e6, (endBytes - startBytes) / 1e6,
+                (endBytes - startBytes) / 1e6 / hours, endWalBytes / 1e6, skus.size());
+    }
+
+    private static void printRow(String label, Histogram h, long elapsedMs) {
+        System.out.printf("%-10s %10d %10.1f %10.2f %10.2f %10.2f %10.2f%n", label, h.count(),
+                h.count() * 1000.0 / elapsedMs, h.percentile(0.50) / 1000.0, h.percentile(0.95) / 1000.0,
+                h.percentile(0.99) / 1000.0, h.max() / 1000.0);
+    }
+
+    /** Virtual threads when the runtime has them (JDK 21+), a fixed pool otherwise. */
+    private static ExecutorService newWorkerPool(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private static Op[] parseMix(String mix) {
+        List<Op> table = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            if (kv.length != 2)
+                throw new IllegalArgumentException("Bad mix entry: " + part);
+            Op op = Op.valueOf(kv[0].trim().toUpperCase());
+            int weight = Integer.parseInt(kv[1].trim());
+            for (int i = 0; i < weight; i++) table.add(op);
+        }
+        if (table.isEmpty())
+            throw new IllegalArgumentException("Mix has no operations");
+        return table.toArray(new Op[0]);
+    }
+
+    static long parseDuration(String text) {
+        String t = text.trim().toLowerCase();
+        char unit = t.charAt(t.length() - 1);
+        long value = Character.isDigit(unit) ? Long.parseLong(t) : Long.parseLong(t.substring(0, t.length() - 1));
+        return switch (unit) {
+            case 'h' -> TimeUnit.HOURS.toMillis(value);
+            case 'm' -> TimeUnit.MINUTES.toMillis(value);
+            case 's' -> TimeUnit.SECONDS.toMillis(value);
+            default -> value;
+        };
+    }
+
+    private static String formatDuration(long ms) {
+        long s = ms / 1000;
+        return String.format("%d:%02d:%02d", s / 3600, (s / 60) % 60, s % 60);
+    }
+
+    /**
+     * Products that are still live, with a Zipf-skewed sampler: rank 0 (the
+     * oldest SKU) is the most popular. Deleted ids are kept so they can be undone.
+     */
+    private static class SkuPool {
+        private int[] ids = new int[1024];
+        private String[] names = new String[1024];
+        private int size;
+        private int[] tombstones = new int[1024];
+        private int buried;
+
+        synchronized void add(int id, String name) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                names = Arrays.copyOf(names, size * 2);
+            }
+            ids[size] = id;
+            names[size] = name;
+            size++;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized String sampleName(double s) {
+            return size == 0 ? null : names[rank(s, size)];
+        }
+
+        /** Samples a product and removes it from the pool, so it is deleted only once. */
+        synchronized int takeId(double s) {
+            if (size == 0) return -1;
+            int i = rank(s, size);
+            int id = ids[i];
+            // Shift rather than swap, so the popularity order of the rest is kept
+            System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+            System.arraycopy(names, i + 1, names, i, size - i - 1);
+            size--;
+            if (buried == tombstones.length) tombstones = Arrays.copyOf(tombstones, buried * 2);
+            tombstones[buried++] = id;
+            return id;
+        }
+
+        /** Takes up to {@code n} deleted ids, most recently deleted first. */
+        synchronized int[] dig(int n) {
+            int taken = Math.min(n, buried);
+            int[] out = new int[taken];
+            for (int i = 0; i < taken; i++) out[i] = tombstones[--buried];
+            return out;
+        }
+
+        /** Inverse-CDF of the continuous Zipf (bounded Pareto) approximation over [0, n). */
+        private static int rank(double s, int n) {
+            double u = ThreadLocalRandom.current().nextDouble();
+            double r;
+            if (s == 0) {
+                r = u * n;
+            } else if (Math.abs(s - 1.0) < 1e-9) {
+                r = Math.pow(n + 1, u) - 1;
+            } else {
+                double a = 1 - s;
+                r = Math.pow(u * (Math.pow(n + 1, a) - 1) + 1, 1 / a) - 1;
+            }
+            return Math.min(n - 1, (int) r);
+        }
+    }
+
+    /**
+     * Lock-free latency histogram in microseconds: 16 linear sub-buckets per
+     * power of two, so percentiles are within about 6%.
+     */
+    private static class Histogram {
+        private static final int SUB = 16;
+        private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB);
+        private final LongAdder count = new LongAdder();
+        private volatile long max;
+
+        void record(long micros) {
+            long v = Math.max(0, micros);
+            int exp = 63 - Long.numberOfLeadingZeros(v | 1);
+            int index = exp < 4 ? (int) v : exp * SUB + (int) ((v >>> (exp - 4)) & (SUB - 1));
+            buckets.incrementAndGet(index);
+            count.increment();
+            if (v > max) {
+                synchronized (this) {
+                    if (v > max) max = v;
+                }
+            }
+        }
+
+        long count() {
+            return count.sum();
+        }
+
+        long max() {
+            return max;
+        }
+
+        /**
+         * Upper bound of the bucket holding the requested percentile, capped at the
+         * largest value recorded so a percentile never reads above the max.
+         */
+        long percentile(double p) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long target = (long) Math.ceil(p * total);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= target) return Math.min(upperBound(i), max);
+            }
+            return max;
+        }
+
+        private static long upperBound(int index) {
+            if (index < SUB) return index;
+            int exp = index / SUB;
+            int sub = index % SUB;
+            return ((long) (SUB + sub + 1) << (exp - 4)) - 1;
+        }
+
+        void reset() {
+            for (int i = 0; i < buckets.length(); i++) buckets.set(i, 0);
+            count.reset();
+            max = 0;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> config = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0)
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            config.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+        }
+        new WorkloadGenerator(config).run();
+    }
+}